@@ -0,0 +1,44 @@
+// Shader-driven particles for ParticlePool. Each particle is uploaded once
+// with its origin, destination, spawn time and lifetime; its position and
+// fade are computed here from the pool's time.
+
+uniform mat4 g_WorldViewProjectionMatrix;
+uniform mat4 g_WorldMatrix;
+uniform vec3 g_CameraPosition;
+
+uniform float m_Quadratic;
+uniform float m_Time;
+
+attribute vec3 inPosition;  // origin
+attribute vec3 inNormal;    // destination
+attribute vec4 inColor;
+attribute float inSize;
+attribute vec2 inTexCoord2; // spawn time, lifetime
+
+varying vec4 color;
+
+const float SIZE_MULTIPLIER = 4.0;
+
+void main(){
+    float t = (m_Time - inTexCoord2.x) / inTexCoord2.y;
+
+    // expired or unused slot: move it outside the clip volume
+    if (t < 0.0 || t >= 1.0) {
+        gl_Position = vec4(2.0, 2.0, 2.0, 1.0);
+        gl_PointSize = 0.0;
+        color = vec4(0.0);
+        return;
+    }
+
+    vec4 pos = vec4(mix(inPosition, inNormal, t), 1.0);
+    gl_Position = g_WorldViewProjectionMatrix * pos;
+
+    color = inColor;
+    #ifdef FADE
+        color.rgb *= 1.0 - t;
+    #endif
+
+    vec4 worldPos = g_WorldMatrix * pos;
+    float d = distance(g_CameraPosition, worldPos.xyz);
+    gl_PointSize = max(1.0, (inSize * SIZE_MULTIPLIER * m_Quadratic) / d);
+}
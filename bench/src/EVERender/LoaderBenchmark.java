@@ -0,0 +1,73 @@
+package EVERender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures startup: parsing systems.txt and gates.txt from assets, and
+ * reading the same data back from a universe cache. Must be run from the
+ * project directory, so that config.txt and assets can be found.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class LoaderBenchmark {
+    private Settings settings;
+    private UniverseLoader loader;
+    private StarCatalog stars;
+    private Path cache;
+
+    @Setup public void setUp() throws IOException {
+        settings = new Settings();
+        settings.load();
+        loader = new UniverseLoader(settings);
+        stars = loader.loadStarData();
+
+        // a cache of its own, so the benchmark never touches universe.cache
+        cache = Files.createTempFile("universe", ".cache");
+        newCache().write(stars, loader.loadGateData(stars));
+    }
+
+    @TearDown public void tearDown() throws IOException {
+        Files.deleteIfExists(cache);
+    }
+
+    private UniverseCache newCache() {
+        return new UniverseCache(cache,
+                Paths.get("assets/systems.txt"),
+                Paths.get("assets/gates.txt"));
+    }
+
+    @Benchmark public StarCatalog loadStarData() {
+        return loader.loadStarData();
+    }
+
+    @Benchmark public GateGraph loadGateData() {
+        return loader.loadGateData(stars);
+    }
+
+    @Benchmark public GateGraph readCache() {
+        UniverseCache universe = newCache();
+        if (!universe.read()) throw new IllegalStateException("cache not read");
+        settings.colorStars(universe.getStars());
+
+        return universe.getGates();
+    }
+}
@@ -0,0 +1,53 @@
+package EVERender;
+
+import com.jme3.scene.Mesh;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building the meshes of Galaxy.attach() from loaded data:
+ * the star point mesh and the jumpgate line mesh. Materials need an asset
+ * manager, and so a display, and aren't included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class MapBuildBenchmark {
+    private StarCatalog stars;
+    private GateGraph gates;
+
+    @Setup public void setUp() {
+        Settings settings = new Settings();
+        settings.load();
+        UniverseLoader loader = new UniverseLoader(settings);
+        stars = loader.loadStarData();
+        gates = loader.loadGateData(stars);
+    }
+
+    @Benchmark public Mesh starField() {
+        StarField field = new StarField(stars.size());
+        field.addAll(stars);
+        return field.getMesh();
+    }
+
+    /**
+     * The indexed gate mesh over a star field's points, as in attach().
+     */
+    @Benchmark public Mesh gateLines() {
+        StarField field = new StarField(stars.size());
+        field.addAll(stars);
+        return new GateLines(field, gates).getMesh();
+    }
+}
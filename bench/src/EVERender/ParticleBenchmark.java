@@ -0,0 +1,93 @@
+package EVERender;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ParticlePool.update() of a "storm" of jump effects, with and
+ * without fork/join, on 1 to 8 threads. Dividing the single-threaded time by
+ * the time on n threads, and then by n, gives the per-core efficiency of the
+ * parallel update.
+ * 
+ * Each frame spawns as many jumps as expire, so the number of live
+ * particles stays near the pool's capacity.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class ParticleBenchmark {
+    private static final float TPF = 1/60f;
+
+    // 0 updates on the calling thread only
+    @Param({"0", "1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"16384", "131072"})
+    public int capacity;
+
+    private StarCatalog stars;
+    private GateGraph gates;
+    private MovingPoints movers;
+    private ForkJoinPool forkJoin;
+    private Random random;
+    private int spawnsPerFrame;
+
+    @Setup(Level.Trial) public void setUp() {
+        Settings settings = new Settings();
+        settings.load();
+        UniverseLoader loader = new UniverseLoader(settings);
+        stars = loader.loadStarData();
+        gates = loader.loadGateData(stars);
+
+        movers = new MovingPoints(capacity, false);
+        if (threads > 0) {
+            forkJoin = new ForkJoinPool(threads);
+            movers.enableParallel(forkJoin, 1);
+        }
+
+        // fill the pool, then spawn what's expected to expire each frame
+        random = new Random(42);
+        while (movers.getCount() < capacity) spawn();
+        float expire = 0;
+        for (int k = 0; k < 60; ++k) {
+            int before = movers.getCount();
+            movers.update(TPF);
+            expire += before - movers.getCount();
+            while (movers.getCount() < capacity) spawn();
+        }
+        spawnsPerFrame = Math.max(1, Math.round(expire/60));
+    }
+
+    @TearDown(Level.Trial) public void tearDown() {
+        if (forkJoin != null) forkJoin.shutdown();
+    }
+
+    private void spawn() {
+        int i = random.nextInt(stars.size());
+        int j = gates.randomNeighbor(i);
+        if (j >= 0) movers.spawn(stars, i, j);
+    }
+
+    @Benchmark public int frame() {
+        for (int k = 0; k < spawnsPerFrame; ++k) spawn();
+        movers.update(TPF);
+        return movers.getCount();
+    }
+}
@@ -0,0 +1,159 @@
+package EVERender;
+
+import com.jme3.math.Plane;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures KdTree's queries against scanning every star: radius queries
+ * around stars, picking with rays cast at stars from around the map, and
+ * view frustum queries from cameras around the map. Each benchmark runs
+ * QUERIES queries from a fixed seed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class SpatialBenchmark {
+    private static final int QUERIES = 256;
+
+    // radius queries, in map units; the map is about 0.75 across
+    @Param({"0.02", "0.1"})
+    public float radius;
+
+    // picking tolerance, as at the camera's default distance
+    private static final float PICK_DISTANCE = 0.007f;
+
+    private StarCatalog stars;
+    private KdTree tree;
+
+    private float[] centers;
+    private Ray[] rays;
+    private Plane[][] frustums;
+
+    @Setup public void setUp() {
+        Settings settings = new Settings();
+        settings.load();
+        stars = new UniverseLoader(settings).loadStarData();
+        tree = new KdTree(stars);
+
+        Random random = new Random(42);
+        centers = new float[QUERIES*3];
+        rays = new Ray[QUERIES];
+        frustums = new Plane[QUERIES][];
+
+        for (int q = 0; q < QUERIES; ++q) {
+            int i = random.nextInt(stars.size());
+            centers[q*3] = stars.x[i];
+            centers[q*3 + 1] = stars.y[i];
+            centers[q*3 + 2] = stars.z[i];
+
+            Vector3f eye = new Vector3f(random.nextFloat() - .5f,
+                    random.nextFloat() - .5f, random.nextFloat() - .5f);
+            Vector3f target = new Vector3f(stars.x[i], stars.y[i], stars.z[i]);
+            rays[q] = new Ray(eye, target.subtract(eye).normalize());
+
+            Camera cam = new Camera(1920, 1080);
+            cam.setFrustumPerspective(45f, 1920f/1080f, 1/64f, 1024);
+            cam.setLocation(eye);
+            cam.lookAt(target, Vector3f.UNIT_Y);
+            cam.update();
+            frustums[q] = new Plane[6];
+            for (int p = 0; p < 6; ++p) frustums[q][p] = cam.getWorldPlane(p);
+        }
+    }
+
+    @Benchmark public int withinTree() {
+        int found = 0;
+        for (int q = 0; q < QUERIES; ++q) {
+            found += tree.within(centers[q*3], centers[q*3 + 1], centers[q*3 + 2],
+                    radius).length;
+        }
+        return found;
+    }
+
+    @Benchmark public int withinScan() {
+        float radiusSq = radius*radius;
+        int found = 0;
+        for (int q = 0; q < QUERIES; ++q) {
+            for (int i = 0; i < stars.size(); ++i) {
+                float dx = stars.x[i] - centers[q*3];
+                float dy = stars.y[i] - centers[q*3 + 1];
+                float dz = stars.z[i] - centers[q*3 + 2];
+                if (dx*dx + dy*dy + dz*dz <= radiusSq) ++found;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark public int pickTree() {
+        int sum = 0;
+        for (int q = 0; q < QUERIES; ++q) sum += tree.pick(rays[q], PICK_DISTANCE);
+        return sum;
+    }
+
+    @Benchmark public int pickScan() {
+        int sum = 0;
+        for (int q = 0; q < QUERIES; ++q) {
+            Vector3f o = rays[q].getOrigin(), d = rays[q].getDirection();
+            int best = -1;
+            float bestSq = PICK_DISTANCE*PICK_DISTANCE;
+            for (int i = 0; i < stars.size(); ++i) {
+                float px = stars.x[i] - o.x, py = stars.y[i] - o.y, pz = stars.z[i] - o.z;
+                float t = px*d.x + py*d.y + pz*d.z;
+                if (t < 0) continue;
+                px -= t*d.x;
+                py -= t*d.y;
+                pz -= t*d.z;
+                float distSq = px*px + py*py + pz*pz;
+                if (distSq < bestSq) {
+                    bestSq = distSq;
+                    best = i;
+                }
+            }
+            sum += best;
+        }
+        return sum;
+    }
+
+    @Benchmark public int frustumTree() {
+        int found = 0;
+        for (int q = 0; q < QUERIES; ++q) found += tree.inFrustum(frustums[q]).length;
+        return found;
+    }
+
+    @Benchmark public int frustumScan() {
+        int found = 0;
+        for (int q = 0; q < QUERIES; ++q) {
+            for (int i = 0; i < stars.size(); ++i) {
+                boolean inside = true;
+                for (Plane plane : frustums[q]) {
+                    Vector3f n = plane.getNormal();
+                    if (n.x*stars.x[i] + n.y*stars.y[i] + n.z*stars.z[i]
+                            - plane.getConstant() < 0) {
+                        inside = false;
+                        break;
+                    }
+                }
+                if (inside) ++found;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,64 @@
+package EVERender;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one frame of Galaxy.update() at 60 fps, with the particle pools
+ * in a steady state, at several speedups of jumps and kills. Activity is
+ * HeadlessRunner.syntheticActivity() with a fixed seed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class UpdateBenchmark {
+    private static final float TPF = 1/60f;
+
+    // seconds simulated before measuring, so that the pools are full
+    private static final float SETTLE = 30;
+
+    // both SPEEDUP_JUMPS and SPEEDUP_KILLS
+    @Param({"1", "5", "25", "100"})
+    public float speedup;
+
+    @Param({"false", "true"})
+    public boolean shaderEffects;
+
+    private Galaxy galaxy;
+
+    @Setup(Level.Trial) public void setUp() {
+        Settings settings = new Settings();
+        settings.load();
+        settings.SPEEDUP_JUMPS = speedup;
+        settings.SPEEDUP_KILLS = speedup;
+        settings.SHADER_EFFECTS = shaderEffects;
+
+        UniverseLoader loader = new UniverseLoader(settings);
+        StarCatalog stars = loader.loadStarData();
+        GateGraph gates = loader.loadGateData(stars);
+
+        galaxy = new Galaxy(settings, stars, gates);
+        galaxy.publishActivity(HeadlessRunner.syntheticActivity(stars, gates, 42));
+
+        for (float t = 0; t < SETTLE; t += TPF) galaxy.update(TPF);
+    }
+
+    @Benchmark public int frame() {
+        galaxy.update(TPF);
+        return galaxy.getFlashes().getCount() + galaxy.getMovers().getCount();
+    }
+}
@@ -1,98 +1,282 @@
 package EVERender;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Scrapes EVE API webpages to read data for kills/jumps in star systems.
  * Extends Thread and runs alongside the render/update thread so that data can
  * be retrieved without interrupting display.
+ *
+ * Each feed is fetched again once the API's cachedUntil time has passed, so
+ * the map follows live activity for as long as it runs. Failed fetches are
+ * retried with exponential backoff.
+ *
+ * Every page is parsed into a new array private to this thread. Once parsed,
+ * the latest kills and jumps are published to the Galaxy together as an
+ * ActivitySnapshot. Published arrays are never written again. Snapshots are
+ * also recorded to an ActivityJournal, if given one, for later replay.
  */
 public class APIScraper extends Thread  {
-    private Galaxy g;
+    public static final String DEFAULT_URL = "https://api.eveonline.com/";
+
+    // delays in milliseconds
+    private static final long DEFAULT_REFRESH = 60*60*1000;
+    private static final long MIN_REFRESH = 60*1000;
+    private static final long MAX_REFRESH = 6*60*60*1000;
+    private static final long REFRESH_MARGIN = 5*1000;
+    private static final long FIRST_RETRY = 30*1000;
+    private static final long MAX_RETRY = 30*60*1000;
+
+    private static final int TIMEOUT = 30*1000;
+
+    private final Galaxy g;
+    private final StarCatalog stars;
+    private final Metrics metrics;
+    private final String baseUrl;
     private volatile boolean terminate = false;
-    
+
+    private final XMLInputFactory xmlFactory;
+
+    private final Feed jumps;
+    private final Feed kills;
+
+    // where published snapshots are recorded, or null
+    private ActivityJournal journal;
+
     /**
      * Creates a new instance of APIScraper. Does not attempt to get any data.
-     * 
+     *
      * @param g the Galaxy to which data should be passed
+     * @param baseUrl the root of the API, such as DEFAULT_URL
      */
-    public APIScraper (Galaxy g) {
+    public APIScraper (Galaxy g, String baseUrl) {
         this.g = g;
+        this.stars = g.getStars();
+        this.metrics = g.getMetrics();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+
+        xmlFactory = XMLInputFactory.newInstance();
+        xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        jumps = new Feed("map/Jumps.xml.aspx", "shipJumps");
+        kills = new Feed("map/Kills.xml.aspx", "shipKills");
+
+        setName("APIScraper");
+        setDaemon(true);
+    }
+
+    /**
+     * Records every snapshot published from now on. Must be called before
+     * the thread is started; the scraper closes the journal when it
+     * terminates.
+     *
+     * @param journal the journal to append to
+     */
+    public void setJournal(ActivityJournal journal) {
+        this.journal = journal;
     }
 
     /**
-     * The method executed by Thread. Scrapes webpages for data and modifies
-     * the instance of Galaxy passed to APIScraper in the constructor.
+     * The method executed by Thread. Fetches each feed whenever it is due and
+     * passes its data to the instance of Galaxy passed to APIScraper in the
+     * constructor, until terminated.
      */
     @Override public void run() {
-        grabJumpData();
-        grabKillData();
+        while (!terminate) {
+            long now = System.currentTimeMillis();
+
+            boolean fetched = false;
+            if (jumps.due <= now) fetched |= jumps.fetch();
+            if (kills.due <= now && !terminate) fetched |= kills.fetch();
+
+            if (fetched && !terminate) {
+                ActivitySnapshot snapshot = new ActivitySnapshot(
+                        kills.values, jumps.values, System.currentTimeMillis());
+                g.publishActivity(snapshot);
+                if (journal != null) record(snapshot);
+            }
+
+            long wait = Math.min(jumps.due, kills.due) - System.currentTimeMillis();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException ex) {
+                    // terminate() interrupts the sleep
+                }
+            }
+        }
+
+        if (journal != null) journal.close();
     }
-    
+
     /**
      * Instructs this thread to terminate as soon as possible.
      */
     public void terminate() {
         terminate = true;
+        interrupt();
     }
-    
-    private void grabJumpData() {
+
+    /**
+     * Appends a snapshot to the journal. Stops recording if it can't.
+     */
+    private void record(ActivitySnapshot snapshot) {
         try {
-            URL url = new URL("https://api.eveonline.com/map/Jumps.xml.aspx");
-            
-            BufferedReader in = new BufferedReader (new InputStreamReader(url.openStream()));
-        
-            String line;
-            while ((line = in.readLine()) != null && !terminate) {
-                line = line.trim();
-                if (line.startsWith("<row ")) {
-                    String[] tokens = line.split("\"");
-                    
-                    g.setJumpsPerHour(
-                            Integer.parseInt(tokens[1]),
-                            Integer.parseInt(tokens[3]));
-                }
-            }
-                
-            in.close();
-        } catch (MalformedURLException ex) {
-            System.err.println("Malformed URL when scraping jump data.");
-            System.err.println(ex.getMessage());
+            journal.append(snapshot);
         } catch (IOException ex) {
-            System.err.println("IOException when scraping for jump data.");
+            System.err.println("IOException when recording activity.");
             System.err.println(ex.getMessage());
+            journal.close();
+            journal = null;
         }
     }
-    
-    private void grabKillData() {
-        try {
-            URL url = new URL("https://api.eveonline.com/map/Kills.xml.aspx");
-            
-            BufferedReader in = new BufferedReader (new InputStreamReader(url.openStream()));
-        
-            String line;
-            while ((line = in.readLine()) != null && !terminate) {
-                line = line.trim();
-                if (line.startsWith("<row ")) {
-                    String[] tokens = line.split("\"");
-                    
-                    g.setKillsPerHour(
-                            Integer.parseInt(tokens[1]),
-                            Integer.parseInt(tokens[3]));
-                }
+
+    /**
+     * One of the API's map pages, its latest values and when to fetch it
+     * next.
+     */
+    private class Feed {
+        private final String page;
+        private final String column;
+
+        private long due = 0;
+        private int failures = 0;
+
+        // per star index, from the last successful fetch; replaced, never
+        // modified, as it may be shared with published snapshots
+        private int[] values;
+
+        Feed(String page, String column) {
+            this.page = page;
+            this.column = column;
+            values = new int[stars.size()];
+        }
+
+        /**
+         * Fetches and parses the page, then schedules the next fetch from
+         * the page's cachedUntil time, or with backoff if it failed. The
+         * time taken is recorded in the galaxy's metrics.
+         *
+         * @return whether new values were read
+         */
+        boolean fetch() {
+            long start = System.nanoTime();
+            boolean read = false;
+            try {
+                long refresh = read();
+                failures = 0;
+                due = System.currentTimeMillis() + refresh;
+                read = true;
+            } catch (IOException ex) {
+                retry("IOException when scraping " + page + ".", ex);
+            } catch (XMLStreamException ex) {
+                retry("Malformed XML when scraping " + page + ".", ex);
             }
-            
-            in.close();
-        } catch (MalformedURLException ex) {
-            System.err.println("Malformed URL when scraping kill data.");
-            System.err.println(ex.getMessage());
-        } catch (IOException ex) {
-            System.err.println("IOException when scraping for kill data.");
+            metrics.recordFetch((System.nanoTime() - start)/1000000, read);
+            return read;
+        }
+
+        private void retry(String message, Exception ex) {
+            long delay = Math.min(FIRST_RETRY << Math.min(failures, 16), MAX_RETRY);
+            ++failures;
+            due = System.currentTimeMillis() + delay;
+
+            System.err.println(message);
             System.err.println(ex.getMessage());
         }
+
+        /**
+         * Reads the page into a new array of values. Systems missing from the
+         * page have had no activity, and are left at zero. values is only
+         * replaced if the whole page was read.
+         *
+         * @return milliseconds until the page should be fetched again
+         */
+        private long read() throws IOException, XMLStreamException {
+            // api: may also point at saved pages, such as a file: URL
+            URLConnection connection = new URL(baseUrl + page).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+
+            if (connection instanceof HttpURLConnection) {
+                HttpURLConnection http = (HttpURLConnection)connection;
+                int status = http.getResponseCode();
+                if (status != HttpURLConnection.HTTP_OK) {
+                    http.disconnect();
+                    throw new IOException("HTTP " + status + " from " + baseUrl + page);
+                }
+            }
+
+            int[] parsed = new int[stars.size()];
+            String currentTime = null, cachedUntil = null;
+
+            InputStream in = connection.getInputStream();
+            XMLStreamReader xml = xmlFactory.createXMLStreamReader(in);
+            try {
+                while (xml.hasNext() && !terminate) {
+                    if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+
+                    String name = xml.getLocalName();
+                    if (name.equals("row")) {
+                        String id = xml.getAttributeValue(null, "solarSystemID");
+                        String value = xml.getAttributeValue(null, column);
+                        if (id == null || value == null) continue;
+
+                        try {
+                            int i = stars.indexOf(Integer.parseInt(id.trim()));
+                            if (i >= 0) parsed[i] = Integer.parseInt(value.trim());
+                        } catch (NumberFormatException ex) { }
+                    } else if (name.equals("currentTime")) {
+                        currentTime = xml.getElementText();
+                    } else if (name.equals("cachedUntil")) {
+                        cachedUntil = xml.getElementText();
+                    }
+                }
+            } finally {
+                xml.close();
+                in.close();
+            }
+
+            if (terminate) return DEFAULT_REFRESH;
+
+            values = parsed;
+            return refreshDelay(currentTime, cachedUntil);
+        }
+    }
+
+    /**
+     * Works out how long to wait before fetching a page again. Both times
+     * come from the API's clock, so the local clock doesn't need to match it.
+     *
+     * @param currentTime the page's currentTime, or null
+     * @param cachedUntil the page's cachedUntil, or null
+     * @return milliseconds until the page should be fetched again
+     */
+    private static long refreshDelay(String currentTime, String cachedUntil) {
+        if (currentTime == null || cachedUntil == null) return DEFAULT_REFRESH;
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        try {
+            long delay = format.parse(cachedUntil.trim()).getTime()
+                    - format.parse(currentTime.trim()).getTime()
+                    + REFRESH_MARGIN;
+            return Math.max(MIN_REFRESH, Math.min(delay, MAX_REFRESH));
+        } catch (ParseException ex) {
+            return DEFAULT_REFRESH;
+        }
     }
 }
@@ -0,0 +1,359 @@
+package EVERender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An append-only file of ActivitySnapshots, so that activity fetched from the
+ * API can be played back later. Snapshots are stored as the stars whose
+ * kills or jumps changed since the previous snapshot, so an hour of quiet
+ * costs a few bytes. Every KEYFRAME_INTERVAL'th snapshot is stored whole, so
+ * that reading any snapshot only needs the ones since its keyframe.
+ *
+ * Snapshots are read from a memory-mapped view of the file; only the time
+ * and offset of each snapshot are kept in memory. A partial snapshot at the
+ * end of the file, left by a crash, is cut off when the journal is opened.
+ *
+ * Layout (big-endian): header of magic, version, star count and a hash of the
+ * star ids, then records of time, flags and payload length, followed by the
+ * payload. The payload is the number of changed stars, then for each the gap
+ * from the previous changed star's index and the change in its kills and
+ * jumps, all as variable-length integers.
+ *
+ * Not thread-safe: a journal is either written by the API scraper or read by
+ * an ActivityReplay.
+ */
+public class ActivityJournal {
+    private static final int MAGIC = 0x4556454A; // "EVEJ"
+    private static final int VERSION = 1;
+
+    // magic, version, stars, id hash
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4;
+
+    // time, flags, payload length
+    private static final int RECORD_HEADER = 8 + 1 + 4;
+    private static final int KEYFRAME = 1;
+
+    private static final int KEYFRAME_INTERVAL = 64;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int starCount;
+
+    // per record, in the order written
+    private long[] times = new long[256];
+    private long[] offsets = new long[256];
+    private int count = 0;
+
+    // length of the file up to the end of the last whole record
+    private long end = HEADER_SIZE;
+
+    // the activity after the last record, which the next is encoded against
+    private final int[] lastKills, lastJumps;
+
+    // the activity after the record last read, to read on from it
+    private MappedByteBuffer map;
+    private int cursor = -1;
+    private final int[] kills, jumps;
+
+    private ActivityJournal(Path file, FileChannel channel, int starCount) {
+        this.file = file;
+        this.channel = channel;
+        this.starCount = starCount;
+
+        lastKills = new int[starCount];
+        lastJumps = new int[starCount];
+        kills = new int[starCount];
+        jumps = new int[starCount];
+    }
+
+    /**
+     * Opens a journal for a catalog's stars, creating it if it doesn't exist.
+     *
+     * @param file the journal file
+     * @param stars the stars the snapshots are indexed by
+     * @return the open journal
+     * @throws IOException if the file can't be read or written, or was
+     *      recorded for a different catalog
+     */
+    public static ActivityJournal open(Path file, StarCatalog stars) throws IOException {
+        int idHash = Arrays.hashCode(Arrays.copyOf(stars.id, stars.size()));
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ActivityJournal journal = new ActivityJournal(file, channel, stars.size());
+
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(stars.size()).putInt(idHash);
+                header.flip();
+                journal.write(header, 0);
+            } else {
+                ByteBuffer header = journal.read(0, HEADER_SIZE);
+                if (header == null
+                        || header.getInt() != MAGIC
+                        || header.getInt() != VERSION
+                        || header.getInt() != stars.size()
+                        || header.getInt() != idHash) {
+                    throw new IOException(file + " was recorded for a different map");
+                }
+                journal.scan();
+            }
+
+            return journal;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Indexes every whole record in the file, cuts off a partial one, and
+     * reads the activity after the last.
+     */
+    private void scan() throws IOException {
+        long size = channel.size();
+        long position = HEADER_SIZE;
+
+        while (position + RECORD_HEADER <= size) {
+            ByteBuffer header = read(position, RECORD_HEADER);
+            long time = header.getLong();
+            header.get();
+            int length = header.getInt();
+            if (length < 0 || position + RECORD_HEADER + length > size) break;
+
+            index(time, position);
+            position += RECORD_HEADER + length;
+        }
+
+        end = position;
+        if (end < size) {
+            System.out.println("Discarding a partial snapshot at the end of " + file);
+            channel.truncate(end);
+        }
+
+        if (count > 0) {
+            readSnapshot(count - 1);
+            System.arraycopy(kills, 0, lastKills, 0, starCount);
+            System.arraycopy(jumps, 0, lastJumps, 0, starCount);
+        }
+    }
+
+    /**
+     * Adds a snapshot to the end of the journal. Snapshot times should not
+     * decrease; a snapshot older than the last is recorded at the last one's
+     * time.
+     *
+     * @param snapshot the activity to add, indexed like the journal's stars
+     * @throws IOException if the file can't be written
+     */
+    public void append(ActivitySnapshot snapshot) throws IOException {
+        if (snapshot.size() != starCount) {
+            throw new IllegalArgumentException("snapshot has " + snapshot.size()
+                    + " stars, journal has " + starCount);
+        }
+
+        boolean keyframe = count % KEYFRAME_INTERVAL == 0;
+        if (keyframe) {
+            Arrays.fill(lastKills, 0);
+            Arrays.fill(lastJumps, 0);
+        }
+
+        int changed = 0;
+        for (int i = 0; i < starCount; ++i) {
+            if (snapshot.getKills(i) != lastKills[i] || snapshot.getJumps(i) != lastJumps[i]) {
+                ++changed;
+            }
+        }
+
+        // at most 5 bytes for each variable-length integer
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + 5 + 15*changed);
+        long time = count > 0 ? Math.max(snapshot.getTime(), times[count - 1])
+                : snapshot.getTime();
+        record.putLong(time).put((byte)(keyframe ? KEYFRAME : 0)).putInt(0);
+
+        putVarint(record, changed);
+        int previous = 0;
+        for (int i = 0; i < starCount; ++i) {
+            int dKills = snapshot.getKills(i) - lastKills[i];
+            int dJumps = snapshot.getJumps(i) - lastJumps[i];
+            if (dKills == 0 && dJumps == 0) continue;
+
+            putVarint(record, i - previous);
+            putVarint(record, zigzag(dKills));
+            putVarint(record, zigzag(dJumps));
+            previous = i;
+
+            lastKills[i] = snapshot.getKills(i);
+            lastJumps[i] = snapshot.getJumps(i);
+        }
+
+        record.putInt(8 + 1, record.position() - RECORD_HEADER);
+        record.flip();
+
+        write(record, end);
+        index(time, end);
+        end += record.limit();
+    }
+
+    /**
+     * @return the number of snapshots in the journal
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param record a snapshot's position in the journal
+     * @return the snapshot's time, in milliseconds since the epoch
+     */
+    public long getTime(int record) {
+        return times[record];
+    }
+
+    /**
+     * Finds the snapshot in effect at a point in time, by binary search.
+     *
+     * @param time the time, in milliseconds since the epoch
+     * @return the last snapshot taken at or before the time, or 0 if every
+     *      snapshot is later
+     */
+    public int seek(long time) {
+        int lo = 0, hi = count - 1, found = 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (times[mid] <= time) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads a snapshot. Reading the snapshot after the last one read only
+     * decodes that snapshot; any other decodes from the keyframe before it.
+     *
+     * @param record the snapshot's position in the journal
+     * @return the snapshot
+     * @throws IOException if the file can't be mapped
+     */
+    public ActivitySnapshot read(int record) throws IOException {
+        readSnapshot(record);
+        return new ActivitySnapshot(kills.clone(), jumps.clone(), times[record]);
+    }
+
+    /**
+     * Closes the file.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            System.out.println("IOException when closing " + file);
+        }
+    }
+
+    /**
+     * Decodes records into kills and jumps until they hold the activity
+     * after a given record.
+     */
+    private void readSnapshot(int record) throws IOException {
+        if (record < 0 || record >= count) {
+            throw new IndexOutOfBoundsException("no snapshot " + record);
+        }
+
+        if (map == null || map.capacity() < end) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+
+        int keyframe = record - record % KEYFRAME_INTERVAL;
+        int from = cursor >= keyframe && cursor <= record ? cursor + 1 : keyframe;
+        for (int r = from; r <= record; ++r) decode(r);
+        cursor = record;
+    }
+
+    /**
+     * Applies one record to kills and jumps.
+     */
+    private void decode(int record) {
+        ByteBuffer data = map.duplicate();
+        data.position((int)offsets[record] + 8);
+
+        if ((data.get() & KEYFRAME) != 0) {
+            Arrays.fill(kills, 0);
+            Arrays.fill(jumps, 0);
+        }
+        data.getInt();
+
+        int changed = getVarint(data);
+        int i = 0;
+        for (int c = 0; c < changed; ++c) {
+            i += getVarint(data);
+            kills[i] += unzigzag(getVarint(data));
+            jumps[i] += unzigzag(getVarint(data));
+        }
+    }
+
+    private void index(long time, long offset) {
+        if (count == times.length) {
+            times = Arrays.copyOf(times, count*2);
+            offsets = Arrays.copyOf(offsets, count*2);
+        }
+        times[count] = time;
+        offsets[count] = offset;
+        ++count;
+    }
+
+    private void write(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    /**
+     * @return the bytes read, or null if the file ends first
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(length);
+        while (data.hasRemaining()) {
+            int read = channel.read(data, position + data.position());
+            if (read < 0) return null;
+        }
+        data.flip();
+        return data;
+    }
+
+    private static void putVarint(ByteBuffer data, int value) {
+        while ((value & ~0x7F) != 0) {
+            data.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        data.put((byte)value);
+    }
+
+    private static int getVarint(ByteBuffer data) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,88 @@
+package EVERender;
+
+import java.io.IOException;
+
+/**
+ * Plays an ActivityJournal back into a Galaxy in place of the API scraper,
+ * sped up by a constant factor, such as a week of activity in a few minutes.
+ * Each snapshot is published when its time comes, read from the journal
+ * only then. The replay starts over once the last snapshot has been shown.
+ */
+public class ActivityReplay extends Thread {
+    // real milliseconds to wait between snapshots at most, so that gaps in
+    // the recording, such as while nothing was running, are skipped over
+    private static final long MAX_WAIT = 10*1000;
+
+    // real milliseconds the last snapshot is shown for before starting over
+    private static final long LOOP_PAUSE = 5*1000;
+
+    private final Galaxy g;
+    private final ActivityJournal journal;
+    private final float speed;
+    private final int first;
+    private volatile boolean terminate = false;
+
+    /**
+     * Creates a replay. Does not publish anything until started.
+     *
+     * @param g the Galaxy to which snapshots should be passed
+     * @param journal the recorded snapshots
+     * @param speed how many times faster than real time to play
+     * @param from the time to start from, in milliseconds since the epoch;
+     *      playback starts with the snapshot in effect then
+     */
+    public ActivityReplay(Galaxy g, ActivityJournal journal, float speed, long from) {
+        this.g = g;
+        this.journal = journal;
+        this.speed = speed;
+        this.first = journal.seek(from);
+
+        setName("ActivityReplay");
+        setDaemon(true);
+    }
+
+    /**
+     * The method executed by Thread. Publishes every snapshot from the
+     * starting one to the last, over and over, until terminated.
+     */
+    @Override public void run() {
+        if (journal.size() == 0) return;
+        
+        while (!terminate) {
+            for (int i = first; i < journal.size() && !terminate; ++i) {
+                try {
+                    g.publishActivity(journal.read(i));
+                } catch (IOException ex) {
+                    System.err.println("IOException when replaying activity.");
+                    System.err.println(ex.getMessage());
+                    return;
+                }
+
+                long wait = LOOP_PAUSE;
+                if (i + 1 < journal.size()) {
+                    wait = Math.min(MAX_WAIT,
+                            (long)((journal.getTime(i + 1) - journal.getTime(i))/speed));
+                }
+                pause(wait);
+            }
+        }
+    }
+
+    /**
+     * Instructs this thread to terminate as soon as possible.
+     */
+    public void terminate() {
+        terminate = true;
+        interrupt();
+    }
+
+    private void pause(long millis) {
+        if (millis <= 0) return;
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            // terminate() interrupts the sleep
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package EVERender;
+
+/**
+ * Kills and jumps per hour of every star at one point in time, indexed like
+ * the StarCatalog. Snapshots are never modified once created, so the API
+ * scraper can hand a whole refresh to the render thread through a single
+ * reference, without locking and without the render thread ever seeing half
+ * of an update.
+ */
+public final class ActivitySnapshot {
+    private final int[] kills;
+    private final int[] jumps;
+    private final long time;
+
+    /**
+     * Creates an ActivitySnapshot. Takes ownership of the arrays, which must
+     * not be modified afterwards.
+     *
+     * @param kills kills per hour of each star
+     * @param jumps jumps per hour of each star
+     * @param time when the data was fetched, in milliseconds since the epoch
+     */
+    public ActivitySnapshot(int[] kills, int[] jumps, long time) {
+        if (kills.length != jumps.length) {
+            throw new IllegalArgumentException("kills and jumps differ in length");
+        }
+
+        this.kills = kills;
+        this.jumps = jumps;
+        this.time = time;
+    }
+
+    /**
+     * @return the number of stars in the snapshot
+     */
+    public int size() {
+        return kills.length;
+    }
+
+    /**
+     * @param i a star index
+     * @return the star's kills per hour
+     */
+    public int getKills(int i) {
+        return kills[i];
+    }
+
+    /**
+     * @param i a star index
+     * @return the star's jumps per hour
+     */
+    public int getJumps(int i) {
+        return jumps[i];
+    }
+
+    /**
+     * @return when the data was fetched, in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+}
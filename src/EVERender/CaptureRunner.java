@@ -0,0 +1,94 @@
+package EVERender;
+
+import com.jme3.system.AppSettings;
+import com.jme3.system.JmeContext;
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Renders the map off-screen to a video, at a fixed timestep and as fast as
+ * possible, instead of to a window. Frames go to a directory of PNGs, or to
+ * a raw BGRA stream if the output ends in .raw; how to encode either with
+ * ffmpeg is printed at the end, along with the capture's throughput.
+ *
+ * Settings and the map are loaded like EveRender loads them, but the map is
+ * always simulated once per frame, at full quality, and input is ignored.
+ * Needs an OpenGL context, which on a headless Linux box can be software GL
+ * under Xvfb (see README.md).
+ *
+ * Usage: CaptureRunner output seconds [fps [width height]] [--threads n]
+ */
+public class CaptureRunner {
+    private static final String USAGE
+            = "Usage: CaptureRunner output seconds [fps [width height]] [--threads n]";
+
+    public static void main(String[] args) {
+        String output = null;
+        float seconds = 0;
+        float fps = 30;
+        int width = 1920, height = 1080;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        int positional = 0;
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            if (arg.equals("--threads") && i + 1 < args.length) {
+                threads = Math.max(1, Integer.parseInt(args[++i]));
+            } else if (positional == 0) {
+                output = arg;
+                ++positional;
+            } else if (positional == 1) {
+                seconds = Float.parseFloat(arg);
+                ++positional;
+            } else if (positional == 2) {
+                fps = Float.parseFloat(arg);
+                ++positional;
+            } else if (positional == 3) {
+                width = Integer.parseInt(arg);
+                ++positional;
+            } else if (positional == 4) {
+                height = Integer.parseInt(arg);
+                ++positional;
+            } else {
+                positional = -1;
+                break;
+            }
+        }
+        if (positional < 2 || positional == 4) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        Settings config = new Settings();
+        config.load();
+        config.screensaver = false;
+        config.SIMULATION_RATE = 0;
+        config.TARGET_FPS = 0;
+
+        FrameWriter writer;
+        try {
+            writer = FrameWriter.open(Paths.get(output), width, height);
+        } catch (IOException ex) {
+            System.out.println("IOException when opening " + output);
+            System.out.println(ex.getMessage());
+            return;
+        }
+
+        EveRender app = new EveRender();
+        app.config = config;
+        app.capture = new FrameCapture(writer, width, height,
+                Math.max(1, Math.round(seconds*fps)), fps, threads);
+
+        AppSettings s = new AppSettings(true);
+        s.setResolution(width, height);
+        s.setSamples(config.SAMPLES);
+        s.setFrameRate(-1);
+        s.setVSync(false);
+        s.setAudioRenderer(null);
+
+        app.setShowSettings(false);
+        app.setSettings(s);
+        app.setTimer(new FixedTimer(fps));
+        app.start(JmeContext.Type.OffscreenSurface);
+    }
+}
@@ -0,0 +1,132 @@
+package EVERender;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches config.txt and re-reads it whenever it changes, handing the new
+ * Settings to a listener. Editors often save a file in several writes, so
+ * the file is only read once it has been left alone for SETTLE
+ * milliseconds.
+ *
+ * The listener is called on this thread; it should pass the settings on to
+ * whichever thread uses them.
+ */
+public class ConfigWatcher extends Thread {
+    // milliseconds without changes before the file is read
+    private static final long SETTLE = 200;
+
+    private final Path file;
+    private final Listener listener;
+    private final WatchService watcher;
+    private volatile boolean terminate = false;
+
+    /**
+     * Creates a watcher for config.txt. Does not watch until started.
+     *
+     * @param listener what to tell of new settings
+     * @throws IOException if the file's directory can't be watched
+     */
+    public ConfigWatcher(Listener listener) throws IOException {
+        this.file = Paths.get(Settings.FILE).toAbsolutePath();
+        this.listener = listener;
+
+        watcher = FileSystems.getDefault().newWatchService();
+        try {
+            file.getParent().register(watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException ex) {
+            watcher.close();
+            throw ex;
+        }
+
+        setName("ConfigWatcher");
+        setDaemon(true);
+    }
+
+    /**
+     * The method executed by Thread. Waits for changes to the file, then
+     * reads it, until terminated.
+     */
+    @Override public void run() {
+        try {
+            while (!terminate) {
+                if (!changed(watcher.take())) continue;
+
+                // wait for the writes to stop
+                WatchKey key;
+                while ((key = watcher.poll(SETTLE, TimeUnit.MILLISECONDS)) != null) {
+                    changed(key);
+                }
+
+                // a file that can't be read, such as halfway through a
+                // save, would reset everything to the defaults
+                Settings settings = new Settings();
+                try {
+                    if (!settings.load()) {
+                        System.out.println("Ignoring changes to config.txt until it can be read");
+                        continue;
+                    }
+                } catch (NumberFormatException ex) {
+                    System.out.println("Ignoring changes to config.txt: " + ex.getMessage());
+                    continue;
+                }
+                listener.settingsChanged(settings);
+            }
+        } catch (InterruptedException ex) {
+            // interrupted from outside; stop watching
+        } catch (ClosedWatchServiceException ex) {
+            // terminate() closes the watch service
+        }
+    }
+
+    /**
+     * Instructs this thread to terminate as soon as possible.
+     */
+    public void terminate() {
+        terminate = true;
+        try {
+            watcher.close();
+        } catch (IOException ex) {
+            System.out.println("IOException when closing the config watcher");
+        }
+    }
+
+    /**
+     * Takes a key's events and resets it.
+     *
+     * @return whether any of the events were for the watched file
+     */
+    private boolean changed(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object name = event.context();
+            if (name instanceof Path && file.getFileName().equals(name)) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Told of settings read from config.txt after it changed.
+     */
+    public interface Listener {
+        /**
+         * Called on the ConfigWatcher's thread.
+         *
+         * @param settings the settings just read
+         */
+        void settingsChanged(Settings settings);
+    }
+}
@@ -0,0 +1,266 @@
+package EVERender;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads whitespace-separated text from EVE's static data dump one field at a
+ * time, straight from the bytes of the file. Numbers are parsed without
+ * creating Strings, including the scientific notation (-8.85E+016) used for
+ * system positions.
+ *
+ * Parse errors throw NumberFormatException, so that loaders can report the
+ * line with getLine() and carry on with the next one.
+ */
+public class DumpReader implements Closeable {
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+
+    private int line = 0;
+
+    /**
+     * Creates a DumpReader. Call nextLine() to move to the first line.
+     *
+     * @param in the stream to read, which is closed by close()
+     */
+    public DumpReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Moves to the start of the next line, skipping anything left on the
+     * current one.
+     *
+     * @return false if there are no more lines
+     * @throws IOException if the stream can't be read
+     */
+    public boolean nextLine() throws IOException {
+        if (line > 0) {
+            int c;
+            while ((c = peek()) >= 0 && c != '\n') ++position;
+            if (c < 0) return false;
+            ++position;
+        }
+
+        if (peek() < 0) return false;
+        ++line;
+        return true;
+    }
+
+    /**
+     * @return the current line, counting from 1
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Skips spaces and tabs, then returns whether the rest of the line is
+     * empty.
+     *
+     * @return whether there are no more fields on this line
+     * @throws IOException if the stream can't be read
+     */
+    public boolean atEndOfLine() throws IOException {
+        skipBlanks();
+        int c = peek();
+        return c < 0 || c == '\n';
+    }
+
+    /**
+     * Skips spaces and tabs, then returns whether the next field looks like a
+     * number. Used to recognize header rows.
+     *
+     * @return whether the next field starts with a sign, digit or point
+     * @throws IOException if the stream can't be read
+     */
+    public boolean startsWithNumber() throws IOException {
+        skipBlanks();
+        int c = peek();
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+
+    /**
+     * Skips a text field, which may contain spaces and ends at the next tab
+     * or the end of the line.
+     *
+     * @throws IOException if the stream can't be read
+     */
+    public void skipText() throws IOException {
+        skipBlanks();
+        int c;
+        while ((c = peek()) >= 0 && c != '\t' && c != '\n') ++position;
+    }
+
+    /**
+     * Reads an integer field.
+     *
+     * @return the integer
+     * @throws IOException if the stream can't be read
+     * @throws NumberFormatException if the field isn't an integer
+     */
+    public int nextInt() throws IOException {
+        skipBlanks();
+        boolean negative = readSign();
+
+        long value = 0;
+        int digits = 0;
+        int c;
+        while ((c = peek()) >= '0' && c <= '9') {
+            value = value*10 + (c - '0');
+            if (value > (long)Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("integer out of range");
+            }
+            ++digits;
+            ++position;
+        }
+
+        if (digits == 0) throw new NumberFormatException("expected an integer");
+        endField();
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("integer out of range");
+        }
+        return (int)value;
+    }
+
+    /**
+     * Reads a decimal field, with an optional fraction and exponent.
+     *
+     * @return the number
+     * @throws IOException if the stream can't be read
+     * @throws NumberFormatException if the field isn't a number
+     */
+    public double nextDouble() throws IOException {
+        skipBlanks();
+        boolean negative = readSign();
+
+        // up to 18 significant digits are kept, later ones only scale
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        int c;
+
+        while ((c = peek()) >= '0' && c <= '9') {
+            if (mantissa < 100000000000000000L) {
+                mantissa = mantissa*10 + (c - '0');
+            } else {
+                ++scale;
+            }
+            ++digits;
+            ++position;
+        }
+
+        if (c == '.') {
+            ++position;
+            while ((c = peek()) >= '0' && c <= '9') {
+                if (mantissa < 100000000000000000L) {
+                    mantissa = mantissa*10 + (c - '0');
+                    --scale;
+                }
+                ++digits;
+                ++position;
+            }
+        }
+
+        if (digits == 0) throw new NumberFormatException("expected a number");
+
+        if (c == 'e' || c == 'E') {
+            ++position;
+            boolean negativeExponent = readSign();
+            int exponent = 0;
+            int exponentDigits = 0;
+            while ((c = peek()) >= '0' && c <= '9') {
+                if (exponent < 10000) exponent = exponent*10 + (c - '0');
+                ++exponentDigits;
+                ++position;
+            }
+            if (exponentDigits == 0) {
+                throw new NumberFormatException("expected an exponent");
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        endField();
+
+        double value = mantissa;
+        if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value *= POWERS_OF_TEN[scale];
+        } else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value /= POWERS_OF_TEN[-scale];
+        } else {
+            value *= Math.pow(10, scale);
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a decimal field as a float.
+     *
+     * @return the number
+     * @throws IOException if the stream can't be read
+     * @throws NumberFormatException if the field isn't a number
+     */
+    public float nextFloat() throws IOException {
+        return (float)nextDouble();
+    }
+
+    /**
+     * Closes the underlying stream.
+     *
+     * @throws IOException if the stream can't be closed
+     */
+    @Override public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean readSign() throws IOException {
+        int c = peek();
+        if (c == '-' || c == '+') {
+            ++position;
+            return c == '-';
+        }
+        return false;
+    }
+
+    /**
+     * Checks that a number is followed by whitespace or the end of the line.
+     */
+    private void endField() throws IOException {
+        int c = peek();
+        if (c >= 0 && c != ' ' && c != '\t' && c != '\r' && c != '\n') {
+            throw new NumberFormatException("unexpected '" + (char)c + "'");
+        }
+    }
+
+    private void skipBlanks() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\r') ++position;
+    }
+
+    /**
+     * @return the next byte without consuming it, or -1 at the end of the
+     *      stream
+     */
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position] & 0xff;
+    }
+}
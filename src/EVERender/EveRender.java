@@ -2,6 +2,7 @@ package EVERender;
  
 import com.jme3.app.FlyCamAppState;
 import com.jme3.app.SimpleApplication;
+import com.jme3.font.BitmapText;
 import com.jme3.input.RawInputListener;
 import com.jme3.input.event.JoyAxisEvent;
 import com.jme3.input.event.JoyButtonEvent;
@@ -14,64 +15,118 @@ import com.jme3.material.RenderState;
 import com.jme3.material.RenderState.FaceCullMode;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
-import com.jme3.math.Vector4f;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
-import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.Spatial;
 import com.jme3.scene.shape.Box;
 import com.jme3.system.AppSettings;
 import com.jme3.texture.Texture;
-import com.jme3.util.BufferUtils;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The main class of the EVE map renderer. Loads data from assets and sets up
  * the Galaxy and application state. Handles input.
+ *
+ * Startup draws the skybox at once and loads the Galaxy on a background
+ * thread; the map is attached on the render thread once its meshes are
+ * built, and its stars fade in a chunk at a time.
  */
-public class EveRender extends SimpleApplication implements RawInputListener {
+public class EveRender extends SimpleApplication
+        implements RawInputListener, MapView {
     public Node universe;
     private LogChaseCamera camera;
     
-    public float SPEEDUP_JUMPS = 1.0f;
-    public float SPEEDUP_KILLS = 1.0f;
+    // settings from config.txt, whose colors and speeds are reloaded when
+    // it changes
+    public Settings config;
+    private ConfigWatcher configWatcher;
     
     private Galaxy g;
+    private final Metrics metrics = new Metrics();
+    private Geometry skybox;
+    private Geometry parallax, gatesGeo;
+    private Geometry flashesGeo, moversGeo;
+    
+    // metrics drawn over the map if enabled in config.txt
+    private BitmapText overlay;
+    private float overlayAge = 0;
+    
+    // seconds between refreshes of the overlay
+    private static final float OVERLAY_REFRESH = 0.5f;
+    
+    // how far from the cursor's ray a star may be picked, relative to the
+    // camera's distance from the map
+    private static final float PICK_RADIUS = 0.01f;
+    
+    // the system last picked, labelled beside its star for PICK_TIME
+    // seconds, or -1
+    private BitmapText pickLabel;
+    private int picked = -1;
+    private float pickedAge = 0;
+    private final Vector3f pickedPosition = new Vector3f();
+    private static final float PICK_TIME = 5f;
+    
+    // opacity of the gate lines, before their vertex colors
+    private static final float LINE_ALPHA = .02f;
+    
+    // background stars are the same on every run
+    private static final long PARALLAX_SEED = 2048;
+    
+    // shared textures and sprite materials
+    private MaterialCache materials;
     private APIScraper apiScraper;
     
-    public Vector3f
-            nullColor1,
-            nullColor2,
-            lowColor1,
-            lowColor2,
-            highColor1,
-            highColor2,
-            lineColor;
-    
-    // whether to exit as soon as any input is recieved
-    private boolean screensaver = false;
- 
+    // recorded activity, either appended to by the scraper or replayed
+    private ActivityJournal journal;
+    private ActivityReplay replay;
+    
+    // simulates the galaxy off the render thread, if enabled in config.txt
+    private SimulationThread simulation;
+    
+    // lowers quality to keep the target frame rate, if enabled in config.txt
+    private QualityGovernor governor;
+    private RenderScaler scaler;
+    
+    // captures the map to a video once loaded, when run by CaptureRunner
+    public FrameCapture capture;
+    
+    // loads the universe and builds the galaxy's meshes off the render thread
+    private ExecutorService loader;
+    private long initStarted;
+    private boolean firstFrame = true;
+    
+    // the map's stars, faded in over FADE_TIME seconds once attached, each
+    // of FADE_CHUNKS chunks of stars starting FADE_STAGGER after the last;
+    // fadeAge is negative once they are fully drawn
+    private StarField starField;
+    private float fadeAge = -1;
+    private static final float FADE_TIME = 1f;
+    private static final float FADE_STAGGER = 0.05f;
+    private static final int FADE_CHUNKS = 16;
+
     public static void main(String[] args){
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
         int width = (int)screenSize.getWidth();
         int height = (int)screenSize.getHeight();
         
         EveRender app = new EveRender();
+        app.config = new Settings();
+        app.config.load();
+        
         AppSettings s = new AppSettings(true);
         s.setFullscreen(true);
-        s.setSamples(16);
+        s.setSamples(app.config.SAMPLES);
         s.setWidth(width);
         s.setHeight(height);
         app.setSettings(s);
@@ -84,16 +139,26 @@ public class EveRender extends SimpleApplication implements RawInputListener {
      * running.
      */
     @Override public void destroy() {
-        apiScraper.terminate();
+        if (loader != null) loader.shutdownNow();
+        if (apiScraper != null) apiScraper.terminate();
+        if (replay != null) replay.terminate();
+        if (simulation != null) simulation.terminate();
+        if (configWatcher != null) configWatcher.terminate();
+        if (capture != null) capture.close();
     }
 
     /**
-     * JME method to initialize the app. Called by JME.
+     * JME method to initialize the app. Called by JME. Only sets up what the
+     * first frame needs, then starts loading the galaxy in the background.
      */
     @Override public void simpleInitApp() {
+        initStarted = System.nanoTime();
+        
         // remove default flyCam
         stateManager.detach( stateManager.getState(FlyCamAppState.class));
         
+        materials = new MaterialCache(assetManager);
+        
         // set up universe node to contain everything except skybox
         universe = new Node();
         rootNode.attachChild(universe);
@@ -102,12 +167,124 @@ public class EveRender extends SimpleApplication implements RawInputListener {
         setUpCamera();
         setUpHud();
         
-        g = new Galaxy(this);
-        apiScraper = new APIScraper(g);
-        apiScraper.start();
+        if (config == null) {
+            config = new Settings();
+            config.load();
+        }
+        if (config.screensaver) camera.setDragToRotate(false);
+        
+        skybox = loadSkybox("textures/starmap.dds");
+        createParallaxStars(config.PARALLAX_STARS);
+        metrics.register();
+        if (config.OVERLAY) createOverlay();
         
         inputManager.setCursorVisible(false);
         inputManager.addRawInputListener(this);
+        
+        loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        loader.execute(new Runnable() {
+            @Override public void run() {
+                loadGalaxy();
+            }
+        });
+    }
+    
+    /**
+     * Loader thread method. Loads the universe, builds the galaxy's meshes
+     * and opens the activity journal, then hands the galaxy to the render
+     * thread to be attached.
+     */
+    private void loadGalaxy() {
+        UniverseLoader universeLoader = new UniverseLoader(config);
+        universeLoader.load();
+        
+        final Galaxy galaxy = new Galaxy(config, universeLoader.getStars(),
+                universeLoader.getGates(), metrics);
+        galaxy.buildMap();
+        
+        if (!config.JOURNAL.isEmpty()) {
+            try {
+                journal = ActivityJournal.open(Paths.get(config.JOURNAL),
+                        galaxy.getStars());
+            } catch (IOException ex) {
+                System.out.println("IOException when opening " + config.JOURNAL);
+                System.out.println(ex.getMessage());
+            }
+        }
+        
+        enqueue(new Callable<Void>() {
+            @Override public Void call() {
+                startGalaxy(galaxy);
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Render thread method. Attaches a loaded galaxy, starts fading its stars
+     * in and starts the threads feeding it: the API scraper, recording to the
+     * journal, or a replay of the journal if enabled in config.txt.
+     * 
+     * @param galaxy the galaxy, with its meshes built
+     */
+    private void startGalaxy(Galaxy galaxy) {
+        g = galaxy;
+        fadeAge = 0;
+        g.attach(this);
+        
+        if (config.REPLAY && journal != null && journal.size() > 0) {
+            long end = journal.getTime(journal.size() - 1);
+            replay = new ActivityReplay(g, journal, config.REPLAY_SPEED,
+                    end - (long)(config.REPLAY_HOURS*60*60*1000));
+            replay.start();
+        } else {
+            if (config.REPLAY) System.out.println("No activity recorded to replay.");
+            
+            apiScraper = new APIScraper(g, config.API_URL);
+            if (journal != null) apiScraper.setJournal(journal);
+            apiScraper.start();
+        }
+        
+        if (config.SIMULATION_RATE > 0) {
+            simulation = new SimulationThread(g, config.SIMULATION_RATE);
+            simulation.start();
+        }
+        
+        // loading frames say nothing about how the map draws
+        if (config.TARGET_FPS > 0) {
+            governor = new QualityGovernor(config.TARGET_FPS);
+            scaler = new RenderScaler(assetManager, renderManager, viewPort,
+                    rootNode, guiNode);
+        }
+        
+        if (capture != null) viewPort.addProcessor(capture);
+        
+        // watched only now, so the loader never sees settings change
+        try {
+            configWatcher = new ConfigWatcher(new ConfigWatcher.Listener() {
+                @Override public void settingsChanged(final Settings settings) {
+                    enqueue(new Callable<Void>() {
+                        @Override public Void call() {
+                            applySettings(settings);
+                            return null;
+                        }
+                    });
+                }
+            });
+            configWatcher.start();
+        } catch (IOException ex) {
+            System.out.println("IOException when watching " + Settings.FILE);
+        }
+        
+        loader.shutdown();
+        System.out.println("Galaxy attached after "
+                + (System.nanoTime() - initStarted)/1000000 + " ms.");
     }
     
     private void setUpCamera() {
@@ -134,19 +311,76 @@ public class EveRender extends SimpleApplication implements RawInputListener {
         return camera;
     }
 
+    /**
+     * Creates the metrics overlay in the top left corner of the screen.
+     */
+    private void createOverlay() {
+        overlay = new BitmapText(guiFont, false);
+        overlay.setSize(guiFont.getCharSet().getRenderedSize());
+        overlay.setColor(ColorRGBA.White);
+        overlay.setLocalTranslation(0, cam.getHeight(), 0);
+        guiNode.attachChild(overlay);
+    }
+
     /**
      * JME method updating the app. Centers the skybox on the camera, then
-     * calls Galaxy's update().
+     * calls Galaxy's update(), or only its present() if the galaxy is
+     * simulated on its own thread. Until the galaxy has loaded, only the
+     * camera and skybox are updated. Every phase is timed into the galaxy's
+     * metrics.
      * 
      * @param tpf delta-time in seconds
      */
     @Override public void simpleUpdate(float tpf) {
+        if (firstFrame) {
+            System.out.println("First frame after "
+                    + (System.nanoTime() - initStarted)/1000000 + " ms.");
+            firstFrame = false;
+        }
+        
+        long start = System.nanoTime();
+        metrics.record(Metrics.Phase.INTERVAL, (long)(tpf*1e9));
+        
         camera.update(tpf);
-        g.skybox.setLocalTranslation(camera.getCamera().getLocation());
-        g.skybox.setLocalRotation(universe.getLocalRotation());
+        if (scaler != null) scaler.update();
+        long cameraDone = System.nanoTime();
+        metrics.record(Metrics.Phase.CAMERA, cameraDone - start);
+        
+        skybox.setLocalTranslation(camera.getCamera().getLocation());
+        skybox.setLocalRotation(universe.getLocalRotation());
+        long skyboxDone = System.nanoTime();
+        metrics.record(Metrics.Phase.SKYBOX, skyboxDone - cameraDone);
         
         universe.rotate(0, tpf*FastMath.DEG_TO_RAD, 0);
-        g.update(tpf);
+        metrics.record(Metrics.Phase.ROTATION, System.nanoTime() - skyboxDone);
+        
+        if (g != null) {
+            if (fadeAge >= 0) fadeStars(tpf);
+            
+            if (simulation != null) {
+                g.present();
+            } else {
+                g.update(tpf);
+            }
+        }
+        
+        if (picked >= 0) updatePickLabel(tpf);
+        
+        if (overlay != null) {
+            overlayAge += tpf;
+            if (overlayAge >= OVERLAY_REFRESH) {
+                overlay.setText(metrics.describe());
+                overlayAge = 0;
+            }
+        }
+        
+        if (governor != null && governor.record(tpf)) {
+            applyQuality(governor.getQuality());
+        }
+        
+        if (capture != null && capture.isDone()) stop();
+        
+        metrics.record(Metrics.Phase.UPDATE, System.nanoTime() - start);
     }
     
     /*
@@ -154,69 +388,74 @@ public class EveRender extends SimpleApplication implements RawInputListener {
      */
     
     /**
-     * Creates a point sprite and returns it. Does not attach it to any nodes.
-     * Sprites are rendered unshaded with additive blend mode.
+     * Creates a single Geometry drawing every point in a StarField. Does not
+     * attach it to any nodes. Points are rendered unshaded with additive
+     * blend mode, in one material per texture; their color and size are kept
+     * in the mesh.
      * 
-     * @param color the sprite's color
-     * @param position the sprite's position
-     * @param size the sprite's radius
-     * @param texture the sprite's texture
-     * @return a Geometry object containing the sprite
+     * @param field the points to draw
+     * @param texture the texture used by every point
+     * @return a Geometry object containing the whole field
      */
-    public Geometry createSprite(Vector3f color, Vector3f position,
-            float size, String texture) {
-        Mesh spriteMesh = new Mesh();
-        spriteMesh.setMode(Mesh.Mode.Points);
-
-        spriteMesh.setBuffer(VertexBuffer.Type.Normal, 3,
-                BufferUtils.createFloatBuffer(Vector3f.ZERO));
-        spriteMesh.setBuffer(VertexBuffer.Type.Color, 3, 
-                BufferUtils.createFloatBuffer(color));
-        spriteMesh.setBuffer(VertexBuffer.Type.Position, 3,
-                BufferUtils.createFloatBuffer(new Vector3f(0f, 0f, 0f)));
-        spriteMesh.setBuffer(VertexBuffer.Type.TexCoord, 4,
-                BufferUtils.createFloatBuffer(new Vector4f(0.0f, 0.0f, 1.0f, 1.0f)));
-        spriteMesh.setBuffer(VertexBuffer.Type.Size, 1,
-                BufferUtils.createFloatBuffer(size));
-
-        Geometry spriteGeo = new Geometry("Star", spriteMesh);
-        spriteGeo.setLocalTranslation(position);
-
-        Material spriteMat = new Material(assetManager, "Common/MatDefs/Misc/Particle.j3md");
-        spriteMat.setTexture("Texture", assetManager.loadTexture(texture));
-        spriteMat.setFloat("Quadratic", 20f);
-        spriteMat.setBoolean("PointSprite", true);
-        spriteMat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.AlphaAdditive);
-        spriteMat.getAdditionalRenderState().setDepthTest(false);
-
-        spriteGeo.setMaterial(spriteMat);
+    public Geometry createStarField(StarField field, String texture) {
+        Geometry fieldGeo = new Geometry("Stars", field.getMesh());
+        fieldGeo.setMaterial(materials.getSprite(texture,
+                RenderState.BlendMode.AlphaAdditive));
         
-        return spriteGeo;
+        return fieldGeo;
+    }
+    
+    /**
+     * Creates a single Geometry drawing every live particle in a
+     * ParticlePool. Does not attach it to any nodes. The Geometry is never
+     * culled, since its particles move every frame.
+     * 
+     * Shader-driven pools use the Effect material, whose Time parameter must
+     * be set from the pool every frame.
+     * 
+     * @param pool the particles to draw
+     * @param texture the texture used by every particle
+     * @return a Geometry object containing the whole pool
+     */
+    public Geometry createParticles(ParticlePool pool, String texture) {
+        Geometry poolGeo = new Geometry("Particles", pool.getMesh());
+        poolGeo.setCullHint(Spatial.CullHint.Never);
+        
+        if (pool.isShaderDriven()) {
+            Material effectMat = new Material(assetManager, "MatDefs/Effect.j3md");
+            effectMat.setTexture("Texture", materials.getTexture(texture));
+            effectMat.setFloat("Quadratic", 20f);
+            effectMat.setFloat("Time", pool.getFrameTime());
+            effectMat.setBoolean("Fade", pool.isFading());
+            effectMat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.AlphaAdditive);
+            effectMat.getAdditionalRenderState().setDepthTest(false);
+            poolGeo.setMaterial(effectMat);
+        } else {
+            poolGeo.setMaterial(materials.getSprite(texture,
+                    RenderState.BlendMode.AlphaAdditive));
+        }
+        
+        return poolGeo;
     }
     
     /**
-     * Creates a line mesh and returns it. Does not attach it to any nodes.
-     * Lines are rendered unshaded with additive blend mode. Mesh array must
-     * have even size, with each pair of Vector3f's representing a single line.
+     * Creates a Geometry for a line mesh and returns it. Does not attach it
+     * to any nodes. Lines are rendered unshaded with additive blend mode,
+     * their color multiplied by the mesh's vertex colors.
      * 
      * For better performance, the entire jumpgate mesh is created as a single
-     * mesh with a single call to createLine().
+     * indexed mesh by GateLines.
      * 
      * @param color the line's color
-     * @param verts pairs of endpoints for each line in the mesh
+     * @param lineMesh a Lines mesh with a 4-component Color buffer
      * @return the Geometry representing the line mesh
      */
-    public Geometry createLine(Vector3f color, Vector3f[] verts) {
-        Mesh lineMesh = new Mesh();
-        lineMesh.setMode(Mesh.Mode.Lines);
-
-        lineMesh.setBuffer(VertexBuffer.Type.Position, 3,
-                BufferUtils.createFloatBuffer(verts));
-
+    public Geometry createLine(Vector3f color, Mesh lineMesh) {
         Geometry spriteGeo = new Geometry("Line", lineMesh);
 
         Material lineMat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
-        lineMat.setColor("Color", new ColorRGBA(color.x, color.y, color.z, .02f));
+        lineMat.setColor("Color", new ColorRGBA(color.x, color.y, color.z, LINE_ALPHA));
+        lineMat.setBoolean("VertexColor", true);
         lineMat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.AlphaAdditive);
         lineMat.getAdditionalRenderState().setDepthTest(false);
 
@@ -236,7 +475,7 @@ public class EveRender extends SimpleApplication implements RawInputListener {
         Box cube = new Box(16f, 16f, 16f);
         Geometry sky = new Geometry("Sky", cube);
         Material skyMat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
-        Texture stars = assetManager.loadTexture(texture);
+        Texture stars = materials.getTexture(texture);
         
         skyMat.setTexture("ColorMap", stars);
         skyMat.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.AlphaAdditive);
@@ -250,215 +489,209 @@ public class EveRender extends SimpleApplication implements RawInputListener {
     }
     
     /*
-     * LOADING METHODS - get text data from files
+     * VIEW METHODS - draw the Galaxy
+     */
+    
+    /**
+     * MapView method. Attaches a single point mesh for all stars to
+     * universe. The stars start out black, to be faded in by fadeStars().
+     * 
+     * @param field a point mesh with one point per star
      */
+    public void showStars(StarField field) {
+        starField = field;
+        for (int i = 0; i < field.size(); ++i) {
+            field.setColor(i, 0f, 0f, 0f);
+        }
+        universe.attachChild(createStarField(field, "textures/star2d.dds"));
+    }
     
     /**
-     * Turns this instance into a screensaver (instructs the camera to hide the
-     * mouse cursor)
+     * MapView method. Attaches a single line mesh for all jumpgates to
+     * universe, in the line color from config.txt.
+     * 
+     * @param lines a line mesh with one line per gate
      */
-    private void makeScreensaver() {
-        screensaver = true;
-        camera.setDragToRotate(false);
+    public void showGates(GateLines lines) {
+        gatesGeo = createLine(config.lineColor, lines.getMesh());
+        universe.attachChild(gatesGeo);
     }
     
     /**
-     * Loads settings from config.txt. Defines star/line colors and speed of
-     * jump/kill simulation.
+     * MapView method. Attaches the kill and jump effects to universe.
+     * 
+     * @param flashes the kill effects
+     * @param movers the jump effects
      */
-    public void loadSettings() {
-        ArrayList<String> settingsText = null;
-        try {
-            Path path = Paths.get("config.txt");
-            settingsText = (ArrayList<String>)Files.readAllLines(
-                    path, StandardCharsets.US_ASCII);
-        } catch (IOException ex) {
-            System.out.println("IOException when reading config.txt");
+    public void showEffects(ParticlePool flashes, ParticlePool movers) {
+        flashesGeo = createParticles(flashes, "textures/flashingpoint.dds");
+        moversGeo = createParticles(movers, "textures/movingpoint.dds");
+        universe.attachChild(flashesGeo);
+        universe.attachChild(moversGeo);
+    }
+    
+    /**
+     * MapView method. Passes the time of shader-driven pools to their
+     * materials.
+     * 
+     * @param flashes the kill effects
+     * @param movers the jump effects
+     */
+    public void effectsUpdated(ParticlePool flashes, ParticlePool movers) {
+        if (flashes.isShaderDriven()) {
+            flashesGeo.getMaterial().setFloat("Time", flashes.getFrameTime());
         }
-        
-        for (String line : settingsText) {
-            int commentIndex = line.indexOf("//");
-            if (commentIndex >= 0) line = line.substring(0, commentIndex);
-            
-            String[] tokens = line.split(":");
-            if (tokens.length < 2) continue;
-            
-            String type = tokens[0].toLowerCase().trim();
-            
-            if (type.equals("nullsec") || type.equals("lowsec") || type.equals("highsec")) {
-                String[] colors = tokens[1].split(";");
-                if (colors.length != 2) continue;
-                
-                if (type.equals("nullsec")) {
-                    nullColor1 = parseColor(colors[0]);
-                    nullColor2 = parseColor(colors[1]);
-                } else if (type.equals("lowsec")) {
-                    lowColor1 = parseColor(colors[0]);
-                    lowColor2 = parseColor(colors[1]);
-                } else if (type.equals("highsec")) {
-                    highColor1 = parseColor(colors[0]);
-                    highColor2 = parseColor(colors[1]);
-                }
-            } else if (type.equals("lines")) {
-                lineColor = parseColor(tokens[1]);
-            } else if (type.equals("jumpspeed")) {
-                SPEEDUP_JUMPS = Float.parseFloat(tokens[1]);
-            } else if (type.equals("killspeed")) {
-                SPEEDUP_KILLS = Float.parseFloat(tokens[1]);
-            } else if (type.equals("screensaver")) {
-                if(parseBool(tokens[1])) makeScreensaver();
-            }
+        if (movers.isShaderDriven()) {
+            moversGeo.getMaterial().setFloat("Time", movers.getFrameTime());
         }
     }
     
-    private boolean parseBool(String in) {
-        in = in.trim().toLowerCase();
-        
-        if (in.equals("true") ||
-                in.equals("yes") ||
-                in.equals("hija'") || // Klingon
-                in.equals("hislah")) return true;
-        
-        if (in.equals("false") ||
-                in.equals("no") ||
-                in.equals("ghobe'")) return false;
+    /**
+     * Creates more 3d stars for a slight parallax effect in front of the
+     * skybox, as a single point mesh attached to universe. Replaces any
+     * created before; as the stars come from a fixed seed, fewer stars are
+     * a subset of more.
+     * 
+     * @param numStars the number of stars to add
+     */
+    private void createParallaxStars(int numStars) {
+        if (parallax != null) {
+            parallax.removeFromParent();
+            parallax = null;
+        }
+        if (numStars <= 0) return;
         
-        return false;
+        StarField field = StarField.createParallax(numStars, PARALLAX_SEED);
+        parallax = createStarField(field, "textures/star2d.dds");
+        parallax.setName("Parallax");
+        universe.attachChild(parallax);
     }
     
     /**
-     * Parses a single color with the format "%f,%f,%f". Returns null if a
-     * NumberFormatException was raised.
+     * Render thread method. Takes on the colors and speeds of settings
+     * reloaded from config.txt, in place: the gate lines' material is
+     * recolored, and the galaxy recolors its stars and reschedules its
+     * events.
      * 
-     * @param in the string to parse
-     * @return the parsed color, or null
+     * @param settings the reloaded settings
      */
-    private Vector3f parseColor(String in) {
-        String[] rgb = in.split(",");
-        if (rgb.length != 3) return null;
-        
-        Vector3f color;
+    private void applySettings(Settings settings) {
+        long start = System.nanoTime();
         
-        try {
-            color = new Vector3f(
-                    Float.parseFloat(rgb[0]),
-                    Float.parseFloat(rgb[1]),
-                    Float.parseFloat(rgb[2]));
-        } catch(NumberFormatException e) {
-            color = null;
+        config.update(settings);
+        if (config.lineColor != null) {
+            gatesGeo.getMaterial().setColor("Color", new ColorRGBA(
+                    config.lineColor.x, config.lineColor.y, config.lineColor.z, LINE_ALPHA));
         }
+        g.settingsChanged();
         
-        return color;
+        System.out.println("Reloaded " + Settings.FILE + " in "
+                + (System.nanoTime() - start)/1000 + " us.");
     }
     
     /**
-     * Loads star data from systems.txt, copied from EVE's static data dump.
-     * Returns EVE's IDs mapped to Stars. Uses vars populated in loadColorData(),
-     * so should be called after it.
+     * Applies a level of quality chosen by the governor.
      * 
-     * @return the Map of IDs to stars
+     * @param quality what to draw
      */
-    public Map<Integer, Star> loadStarData() {
-        ArrayList<String> starsText = null;
-        Map<Integer, Star> stars = new HashMap<Integer, Star>();
+    private void applyQuality(QualityGovernor.Quality quality) {
+        ParticlePool flashes = g.getFlashes(), movers = g.getMovers();
+        flashes.setLimit((int)(flashes.getCapacity()*quality.particles));
+        movers.setLimit((int)(movers.getCapacity()*quality.particles));
         
-        try {
-            Path path = Paths.get("assets/systems.txt");
-            starsText = (ArrayList<String>)Files.readAllLines(
-                    path, StandardCharsets.US_ASCII);
-        } catch (IOException ex) {
-            System.out.println("IOException when reading systems.txt");
-        }
+        createParallaxStars((int)(config.PARALLAX_STARS*quality.parallax));
+        gatesGeo.setCullHint(quality.lines
+                ? Spatial.CullHint.Inherit : Spatial.CullHint.Always);
+        scaler.setScale(quality.renderScale);
+    }
+    
+    /**
+     * Finds the star under a point on the screen.
+     * 
+     * @param screen the point, in pixels from the bottom left corner
+     * @return the star's index, or -1 if there is none or the galaxy hasn't
+     *      loaded yet
+     */
+    public int pickSystem(Vector2f screen) {
+        if (g == null) return -1;
         
-        for (String line : starsText) {
-            String[] tokens = line.split("\\s");
-            Vector3f location = null;
-            float size = 0;
-            float security = 0;
-            int id = 0;
-            
-            float positionFactor = FastMath.pow(2, 60);
-            float sizeFactor = .02f;
-            
-            try {
-                location = new Vector3f(
-                        Float.parseFloat(tokens[2])/positionFactor + 0.075f,
-                        Float.parseFloat(tokens[3])/positionFactor,
-                        Float.parseFloat(tokens[4])/positionFactor);
-                
-                security = Float.parseFloat(tokens[6]);
-                
-                id = Integer.parseInt(tokens[0]);
-                
-                size = Float.parseFloat(tokens[5])*Float.parseFloat(tokens[7]);
-                size = FastMath.pow(size,0.125f)*sizeFactor;
-            }
-            catch (NumberFormatException e) { }
-            
-            // exclude invalid positions and w-space
-            // (offset from the origin in a group by itself)
-            if (location != null && location.x-location.z < 5) {
-                Vector3f color;
-                
-                if (security < 0f) {
-                    color = FastMath.interpolateLinear(security+1, nullColor1, nullColor2);
-                } else if (security < 0.5f) {
-                    color = FastMath.interpolateLinear(security*2, lowColor1, lowColor2);
-                } else {
-                    color = FastMath.interpolateLinear((security-.5f)*2, highColor1, highColor2);
-                }
-                
-                stars.put(id, new Star(id, location, size, color));
-            }
+        // the stars are positioned in universe's rotating space
+        Ray ray = camera.getPickRay(screen);
+        Vector3f origin = universe.worldToLocal(ray.getOrigin(), null);
+        Vector3f ahead = universe.worldToLocal(
+                ray.getOrigin().add(ray.getDirection()), null);
+        Ray local = new Ray(origin, ahead.subtract(origin).normalize());
+        
+        return g.getTree().pick(local, PICK_RADIUS*camera.getDistanceToTarget());
+    }
+    
+    /**
+     * Labels a picked system with its ID beside its star, until PICK_TIME
+     * seconds have passed or another is picked.
+     * 
+     * @param star the star's index
+     */
+    private void showPick(int star) {
+        if (pickLabel == null) {
+            pickLabel = new BitmapText(guiFont, false);
+            pickLabel.setSize(guiFont.getCharSet().getRenderedSize());
+            pickLabel.setColor(ColorRGBA.White);
+            guiNode.attachChild(pickLabel);
         }
         
-        return stars;
+        pickLabel.setText("System " + g.getStars().id[star]);
+        pickLabel.setCullHint(Spatial.CullHint.Inherit);
+        picked = star;
+        pickedAge = 0;
     }
     
     /**
-     * Given a Map of stars from loadStarData() and the assets/gates.txt file,
-     * generates a list of destinations for each star representing jumpgates.
+     * Keeps the pick label beside its star as the map turns, and hides it
+     * once it has been shown for PICK_TIME seconds.
      * 
-     * @param stars the Map of stars returned by loadStarData()
-     * @return a Map of stars to lists of destinations
+     * @param tpf delta-time in seconds
      */
-    public Map<Star, List<Star>> loadGateData(Map<Integer, Star> stars) {
-        ArrayList<String> gatesText = null;
-        Map<Star, List<Star>> gates = new HashMap<Star, List<Star>>();
+    private void updatePickLabel(float tpf) {
+        pickedAge += tpf;
+        if (pickedAge >= PICK_TIME) {
+            pickLabel.setCullHint(Spatial.CullHint.Always);
+            picked = -1;
+            return;
+        }
         
-        try {
-            Path path = Paths.get("assets/gates.txt");
-            gatesText = (ArrayList<String>)Files.readAllLines(
-                    path, StandardCharsets.US_ASCII);
-        } catch (IOException ex) {
-            System.out.println("IOException when reading gates.txt");
+        StarCatalog stars = g.getStars();
+        pickedPosition.set(stars.x[picked], stars.y[picked], stars.z[picked]);
+        universe.localToWorld(pickedPosition, pickedPosition);
+        cam.getScreenCoordinates(pickedPosition, pickedPosition);
+        
+        // beyond the far plane or behind the camera
+        if (pickedPosition.z > 1) {
+            pickLabel.setCullHint(Spatial.CullHint.Always);
+        } else {
+            pickLabel.setCullHint(Spatial.CullHint.Inherit);
+            pickLabel.setLocalTranslation(pickedPosition.x + 8,
+                    pickedPosition.y + pickLabel.getLineHeight()/2, 0);
         }
+    }
+    
+    /**
+     * Brings the map's stars in towards their catalog colors, one chunk of
+     * stars after another, until all are fully drawn.
+     * 
+     * @param tpf delta-time in seconds
+     */
+    private void fadeStars(float tpf) {
+        fadeAge += tpf;
         
-        for (String line : gatesText) {
-            String[] tokens = line.split("\\s");
-            
-            int id1 = 0, id2 = 0;
-            try {
-                id1 = Integer.parseInt(tokens[0]);
-                id2 = Integer.parseInt(tokens[1]);
-            } catch (NumberFormatException e) { }
-            
-            Star s1 = stars.get(id1), s2 = stars.get(id2);
-            
-            if (s1 != null && s2 != null) {
-                if (gates.get(s1) == null) {
-                    gates.put(s1, new LinkedList<Star>());
-                }
-                gates.get(s1).add(s2);
-                
-                if (gates.get(s2) == null) {
-                    gates.put(s2, new LinkedList<Star>());
-                }
-                gates.get(s2).add(s1);
-            }
+        StarCatalog stars = g.getStars();
+        int chunkSize = Math.max(1, (stars.size() + FADE_CHUNKS - 1)/FADE_CHUNKS);
+        for (int i = 0; i < stars.size(); ++i) {
+            float fade = (fadeAge - (i/chunkSize)*FADE_STAGGER)/FADE_TIME;
+            fade = FastMath.clamp(fade, 0f, 1f);
+            starField.setColor(i, stars.r[i]*fade, stars.g[i]*fade, stars.b[i]*fade);
         }
         
-        return gates;
+        if (fadeAge >= (FADE_CHUNKS - 1)*FADE_STAGGER + FADE_TIME) fadeAge = -1;
     }
     
     /*
@@ -469,26 +702,31 @@ public class EveRender extends SimpleApplication implements RawInputListener {
     public void endInput() { }
 
     public void onJoyAxisEvent(JoyAxisEvent evt) {
-        if (screensaver) this.stop();
+        if (config.screensaver) this.stop();
     }
 
     public void onJoyButtonEvent(JoyButtonEvent evt) {
-        if (screensaver) this.stop();
+        if (config.screensaver) this.stop();
     }
 
     public void onMouseMotionEvent(MouseMotionEvent evt) {
-        if (screensaver) this.stop();
+        if (config.screensaver) this.stop();
     }
 
     public void onMouseButtonEvent(MouseButtonEvent evt) {
-        if (screensaver) this.stop();
+        if (config.screensaver) this.stop();
+        
+        if (evt.isPressed() && evt.getButtonIndex() == 0) {
+            int star = pickSystem(new Vector2f(evt.getX(), evt.getY()));
+            if (star >= 0) showPick(star);
+        }
     }
 
     public void onKeyEvent(KeyInputEvent evt) {
-        if (screensaver) this.stop();
+        if (config.screensaver) this.stop();
     }
 
     public void onTouchEvent(TouchEvent evt) {
-        if (screensaver) this.stop();
+        if (config.screensaver) this.stop();
     }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package EVERender;
+
+import com.jme3.math.FastMath;
+
+/**
+ * Schedules random events (kills or jumps) for a fixed set of keys, each
+ * with its own rate. Events of a single key form a Poisson process: the time
+ * to the next event is drawn from an exponential distribution, and only
+ * redrawn when the event fires or the key's rate changes.
+ *
+ * Keys with a nonzero rate are kept in a binary min-heap ordered by the time
+ * of their next event, so advancing the clock costs O(log n) per event fired
+ * instead of a pass over every key.
+ */
+public class EventScheduler {
+    // heap of keys, ordered by due time
+    private final int[] heap;
+    private int size = 0;
+
+    // per key: position in heap or -1, time of next event, events per second
+    private final int[] position;
+    private final double[] due;
+    private final float[] rate;
+
+    // current time in seconds
+    private double now = 0;
+
+    /**
+     * Creates an EventScheduler with every key's rate set to zero.
+     *
+     * @param keys the number of keys, numbered from zero
+     */
+    public EventScheduler(int keys) {
+        heap = new int[keys];
+        position = new int[keys];
+        due = new double[keys];
+        rate = new float[keys];
+
+        for (int i = 0; i < keys; ++i) {
+            position[i] = -1;
+        }
+    }
+
+    /**
+     * Sets the rate of events for a key and redraws the time of its next
+     * event. A rate of zero stops the key's events.
+     *
+     * @param key the key
+     * @param perSecond the average number of events per second
+     */
+    public void setRate(int key, float perSecond) {
+        if (perSecond == rate[key]) return;
+        rate[key] = perSecond;
+
+        if (perSecond <= 0) {
+            remove(key);
+            return;
+        }
+
+        due[key] = now + nextInterval(perSecond);
+        if (position[key] < 0) {
+            position[key] = size;
+            heap[size++] = key;
+            siftUp(position[key]);
+        } else {
+            siftUp(position[key]);
+            siftDown(position[key]);
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the key's average number of events per second
+     */
+    public float getRate(int key) {
+        return rate[key];
+    }
+
+    /**
+     * Advances the clock. Events that are now due are returned by next().
+     *
+     * @param seconds the time to advance by
+     */
+    public void advance(float seconds) {
+        now += seconds;
+    }
+
+    /**
+     * Returns the key of the earliest event due by the current time and
+     * schedules that key's following event. Returns -1 once no more events
+     * are due. Call repeatedly after advance() to get every event in a frame,
+     * including several events of the same key.
+     *
+     * @return the key of a due event, or -1
+     */
+    public int next() {
+        if (size == 0) return -1;
+
+        int key = heap[0];
+        if (due[key] > now) return -1;
+
+        due[key] += nextInterval(rate[key]);
+        siftDown(0);
+
+        return key;
+    }
+
+    /**
+     * @return the number of keys with a nonzero rate
+     */
+    public int getActive() {
+        return size;
+    }
+
+    /**
+     * Draws the time until the next event of a Poisson process.
+     *
+     * @param perSecond the average number of events per second
+     * @return seconds until the next event
+     */
+    private static double nextInterval(float perSecond) {
+        return -Math.log(1.0 - FastMath.nextRandomFloat()) / perSecond;
+    }
+
+    private void remove(int key) {
+        int i = position[key];
+        if (i < 0) return;
+
+        position[key] = -1;
+        --size;
+        if (i == size) return;
+
+        heap[i] = heap[size];
+        position[heap[i]] = i;
+        siftUp(i);
+        siftDown(i);
+    }
+
+    private void siftUp(int i) {
+        int key = heap[i];
+
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (due[heap[parent]] <= due[key]) break;
+
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+
+        heap[i] = key;
+        position[key] = i;
+    }
+
+    private void siftDown(int i) {
+        int key = heap[i];
+
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && due[heap[child + 1]] < due[heap[child]]) ++child;
+            if (due[key] <= due[heap[child]]) break;
+
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+
+        heap[i] = key;
+        position[key] = i;
+    }
+}
@@ -0,0 +1,48 @@
+package EVERender;
+
+import com.jme3.system.Timer;
+
+/**
+ * A Timer that advances by the same amount every frame, however long the
+ * frame took to draw, so that a captured video plays at its frame rate no
+ * matter how fast it was rendered.
+ */
+public class FixedTimer extends Timer {
+    private static final long NANOS = 1000000000L;
+
+    private final float fps;
+    private long frames = 0;
+
+    /**
+     * Creates a timer at frame 0.
+     *
+     * @param fps the frames per second of time to pretend
+     */
+    public FixedTimer(float fps) {
+        this.fps = fps;
+    }
+
+    @Override public long getTime() {
+        return (long)(frames*NANOS/fps);
+    }
+
+    @Override public long getResolution() {
+        return NANOS;
+    }
+
+    @Override public float getFrameRate() {
+        return fps;
+    }
+
+    @Override public float getTimePerFrame() {
+        return 1/fps;
+    }
+
+    @Override public void update() {
+        ++frames;
+    }
+
+    @Override public void reset() {
+        frames = 0;
+    }
+}
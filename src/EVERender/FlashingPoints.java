@@ -0,0 +1,34 @@
+package EVERender;
+
+/**
+ * Quickly disappearing points rendered in the galaxy map. Represent player
+ * kills.
+ */
+public class FlashingPoints extends ParticlePool {
+    // time in seconds for a point to fade out
+    static final float LIFETIME = 0.25f;
+    
+    /**
+     * Creates an empty set of FlashingPoints.
+     * @param capacity the maximum number of points alive at once
+     * @param shaderDriven whether points are animated by the Effect material
+     */
+    public FlashingPoints (int capacity, boolean shaderDriven) {
+        super(capacity, true, shaderDriven);
+    }
+    
+    /**
+     * Creates a flashing point at a given star. Drops the oldest point if
+     * the pool is full.
+     * 
+     * @param stars the catalog of stars
+     * @param s the index of the star at which to create the point
+     */
+    public void spawn(StarCatalog stars, int s) {
+        emit(stars.x[s], stars.y[s], stars.z[s],
+                stars.x[s], stars.y[s], stars.z[s],
+                stars.r[s], stars.g[s], stars.b[s],
+                stars.size[s]*0.25f+0.25f,
+                LIFETIME);
+    }
+}
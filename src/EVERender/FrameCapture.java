@@ -0,0 +1,318 @@
+package EVERender;
+
+import com.jme3.post.SceneProcessor;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.Renderer;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.texture.FrameBuffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+
+/**
+ * Captures a fixed number of frames from a view and hands them to encoder
+ * threads writing them to a FrameWriter.
+ *
+ * Frames are read back asynchronously through a ring of RING pixel buffer
+ * objects: each frame's glReadPixels only queues a copy into a buffer on the
+ * GPU, and the buffer is mapped when its turn in the ring comes round again,
+ * RING frames later, just before it is read into. By then the copy has long
+ * finished, so the render thread never waits on the GPU. The mapped pixels
+ * are copied into one of a fixed pool of frames and queued for the
+ * encoders. When every frame of the pool is waiting to be encoded, the
+ * render thread waits for one to be freed; with a fixed timestep, slow
+ * encoders slow the capture down but never drop frames.
+ *
+ * Timings of each stage are reported every REPORT_INTERVAL captured frames
+ * and at the end.
+ */
+public class FrameCapture implements SceneProcessor {
+    // pixel buffers being read into at once
+    private static final int RING = 3;
+
+    // frames that may wait for the encoders, per encoder thread
+    private static final int QUEUE_PER_ENCODER = 2;
+
+    // frames between progress reports
+    private static final int REPORT_INTERVAL = 600;
+
+    private final FrameWriter writer;
+    private final int width, height, frameSize;
+    private final long frames;
+    private final float fps;
+
+    private Renderer renderer;
+    private boolean initialized = false;
+
+    // the ring of pixel buffers, and the frame each holds or -1
+    private final int[] pbos = new int[RING];
+    private final long[] pending = new long[RING];
+    private long readFrames = 0, queuedFrames = 0;
+
+    // frames waiting for the encoders, and frames free to be filled
+    private final BlockingQueue<Frame> queue;
+    private final BlockingQueue<Frame> free;
+    private final Thread[] encoders;
+    private volatile IOException failure;
+
+    // nanoseconds spent per frame mapping and copying the pixels, waiting
+    // for a free frame, and encoding
+    private final Histogram readback = new Histogram();
+    private final Histogram stalls = new Histogram();
+    private final Histogram encoding = new Histogram();
+    private long started, reportStarted;
+
+    /**
+     * Creates a capture and starts its encoder threads. Does not capture
+     * until added to a view.
+     *
+     * @param writer where to write the frames
+     * @param width the view's width in pixels
+     * @param height the view's height in pixels
+     * @param frames the number of frames to capture
+     * @param fps the frames per second of the timestep, for reports
+     * @param threads the number of encoder threads
+     */
+    public FrameCapture(FrameWriter writer, int width, int height,
+            long frames, float fps, int threads) {
+        this.writer = writer;
+        this.width = width;
+        this.height = height;
+        this.frameSize = width*height*4;
+        this.frames = frames;
+        this.fps = fps;
+
+        int poolSize = threads*QUEUE_PER_ENCODER;
+        // room for every frame, and for telling each encoder to stop
+        queue = new ArrayBlockingQueue<Frame>(poolSize + threads);
+        free = new ArrayBlockingQueue<Frame>(poolSize);
+        for (int i = 0; i < poolSize; ++i) {
+            free.add(new Frame(ByteBuffer.allocateDirect(frameSize)));
+        }
+
+        encoders = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            encoders[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    encode();
+                }
+            }, "Encoder-" + i);
+            encoders[i].setDaemon(true);
+            encoders[i].start();
+        }
+    }
+
+    /**
+     * SceneProcessor method. Creates the pixel buffers, each big enough for
+     * a frame.
+     */
+    @Override public void initialize(RenderManager rm, ViewPort vp) {
+        renderer = rm.getRenderer();
+
+        for (int i = 0; i < RING; ++i) {
+            pbos[i] = GL15.glGenBuffers();
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbos[i]);
+            GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, frameSize, GL15.GL_STREAM_READ);
+            pending[i] = -1;
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+
+        started = reportStarted = System.nanoTime();
+        initialized = true;
+    }
+
+    @Override public void reshape(ViewPort vp, int w, int h) { }
+
+    @Override public boolean isInitialized() {
+        return initialized;
+    }
+
+    @Override public void preFrame(float tpf) { }
+
+    @Override public void postQueue(RenderQueue rq) { }
+
+    /**
+     * SceneProcessor method. Queues a read of the frame just drawn into the
+     * next pixel buffer, after handing off the frame that buffer held. Once
+     * every frame has been read, hands off the rest.
+     *
+     * @param out the framebuffer the view was drawn to, or null for the
+     *      screen
+     */
+    @Override public void postFrame(FrameBuffer out) {
+        if (isDone()) return;
+
+        int slot = (int)(readFrames % RING);
+        if (pending[slot] >= 0) handOff(slot);
+
+        renderer.setFrameBuffer(out);
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbos[slot]);
+        GL11.glReadPixels(0, 0, width, height, GL12.GL_BGRA, GL11.GL_UNSIGNED_BYTE, 0);
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        pending[slot] = readFrames++;
+
+        if (readFrames == frames) {
+            for (int i = 0; i < RING; ++i) {
+                int next = (int)((readFrames + i) % RING);
+                if (pending[next] >= 0) handOff(next);
+            }
+        }
+    }
+
+    /**
+     * Maps a pixel buffer, copies its frame into a free one and queues it for
+     * the encoders.
+     */
+    private void handOff(int slot) {
+        long start = System.nanoTime();
+        Frame frame;
+        try {
+            frame = free.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long freed = System.nanoTime();
+        stalls.record(freed - start);
+
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbos[slot]);
+        ByteBuffer mapped = GL15.glMapBuffer(GL21.GL_PIXEL_PACK_BUFFER, GL15.GL_READ_ONLY, null);
+        frame.pixels.clear();
+        frame.pixels.put(mapped);
+        frame.pixels.flip();
+        GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+
+        frame.index = pending[slot];
+        pending[slot] = -1;
+        queue.add(frame);
+        readback.record(System.nanoTime() - freed);
+
+        if (++queuedFrames % REPORT_INTERVAL == 0) report();
+    }
+
+    /**
+     * Encoder thread method. Writes queued frames until told to stop by a
+     * frame with no pixels.
+     */
+    private void encode() {
+        while (true) {
+            Frame frame;
+            try {
+                frame = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (frame.pixels == null) return;
+
+            long start = System.nanoTime();
+            try {
+                writer.write(frame.index, frame.pixels);
+            } catch (IOException ex) {
+                if (failure == null) {
+                    System.out.println("IOException when writing frame " + frame.index);
+                    System.out.println(ex.getMessage());
+                }
+                failure = ex;
+            }
+            encoding.record(System.nanoTime() - start);
+
+            free.add(frame);
+        }
+    }
+
+    /**
+     * @return whether every frame has been handed to the encoders, or
+     *      writing one failed
+     */
+    public boolean isDone() {
+        return queuedFrames == frames || failure != null;
+    }
+
+    /**
+     * SceneProcessor method. Deletes the pixel buffers.
+     */
+    @Override public void cleanup() {
+        for (int i = 0; i < RING; ++i) {
+            GL15.glDeleteBuffers(pbos[i]);
+        }
+        initialized = false;
+    }
+
+    /**
+     * Waits for the encoders to write every frame handed to them, closes the
+     * writer and reports how the capture went. Call once, after the last
+     * frame.
+     */
+    public void close() {
+        for (int i = 0; i < encoders.length; ++i) {
+            queue.add(new Frame(null));
+        }
+        for (Thread encoder : encoders) {
+            try {
+                encoder.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            System.out.println("IOException when closing the capture");
+        }
+
+        double wall = (System.nanoTime() - started)/1e9;
+        System.out.printf(
+                "Captured %d of %d frames (%.1f s of video) in %.1f s: "
+                + "%.1f frames/s, %.2fx real time, %.0f MB/s read back%n",
+                queuedFrames, frames, queuedFrames/fps, wall,
+                queuedFrames/wall, queuedFrames/fps/wall,
+                queuedFrames*(double)frameSize/wall/(1 << 20));
+        describe();
+        if (failure == null) System.out.println("To encode: " + writer.describe(fps));
+    }
+
+    /**
+     * Prints progress since the last report.
+     */
+    private void report() {
+        long now = System.nanoTime();
+        System.out.printf("Frame %d/%d  %.1f frames/s  queued %d%n",
+                queuedFrames, frames,
+                REPORT_INTERVAL/((now - reportStarted)/1e9), queue.size());
+        describe();
+        reportStarted = now;
+    }
+
+    private void describe() {
+        describe("readback", readback.getSummary());
+        describe("waiting for encoders", stalls.getSummary());
+        describe("encoding (" + encoders.length + " threads)", encoding.getSummary());
+    }
+
+    private static void describe(String stage, Histogram.Summary s) {
+        System.out.printf("  %-28s mean %7.2f ms  p50 %7.2f  p99 %7.2f  max %7.2f%n",
+                stage, s.getMean()/1e6, s.getP50()/1e6, s.getP99()/1e6, s.getMax()/1e6);
+    }
+
+    /**
+     * A frame's pixels, and which frame they are.
+     */
+    private static class Frame {
+        final ByteBuffer pixels;
+        long index;
+
+        Frame(ByteBuffer pixels) {
+            this.pixels = pixels;
+        }
+    }
+}
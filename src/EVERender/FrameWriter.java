@@ -0,0 +1,154 @@
+package EVERender;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.imageio.ImageIO;
+
+/**
+ * Writes captured frames to disk, either as a directory of numbered PNGs or,
+ * for a file ending in .raw, as one stream of raw BGRA frames. Frames are
+ * read from OpenGL bottom row first, and are flipped to be written top row
+ * first.
+ *
+ * Thread-safe: any number of encoder threads may write frames at once, in
+ * any order, since each frame goes to its own file or to its own place in
+ * the stream.
+ */
+public abstract class FrameWriter {
+    protected final Path output;
+    protected final int width, height;
+
+    protected FrameWriter(Path output, int width, int height) {
+        this.output = output;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Opens a writer for frames of a size, choosing the format by name.
+     *
+     * @param output a .raw file, or a directory for PNGs
+     * @param width the frames' width in pixels
+     * @param height the frames' height in pixels
+     * @return the writer
+     * @throws IOException if the file or directory can't be created
+     */
+    public static FrameWriter open(Path output, int width, int height) throws IOException {
+        if (output.getFileName().toString().toLowerCase().endsWith(".raw")) {
+            return new RawVideo(output, width, height);
+        }
+        return new ImageSequence(output, width, height);
+    }
+
+    /**
+     * Writes a frame.
+     *
+     * @param index the frame's number, counting from 0
+     * @param bgra the frame's pixels as read from OpenGL, bottom row first
+     * @throws IOException if the frame can't be written
+     */
+    public abstract void write(long index, ByteBuffer bgra) throws IOException;
+
+    /**
+     * Finishes writing, once every frame has been written.
+     *
+     * @throws IOException if the output can't be closed
+     */
+    public abstract void close() throws IOException;
+
+    /**
+     * @param fps the frames per second the frames were captured at
+     * @return how to make the output into a video, for the log
+     */
+    public abstract String describe(float fps);
+
+    /**
+     * A numbered PNG per frame in a directory.
+     */
+    private static class ImageSequence extends FrameWriter {
+        ImageSequence(Path output, int width, int height) throws IOException {
+            super(output, width, height);
+            Files.createDirectories(output);
+        }
+
+        @Override public void write(long index, ByteBuffer bgra) throws IOException {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            int[] rgb = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+
+            // B, G, R, A bytes read little-endian are 0xAARRGGBB
+            IntBuffer pixels = bgra.duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            for (int y = 0; y < height; ++y) {
+                pixels.position((height - 1 - y)*width);
+                pixels.get(rgb, y*width, width);
+            }
+
+            ImageIO.write(image, "png", output.resolve(
+                    String.format("frame%06d.png", index)).toFile());
+        }
+
+        @Override public void close() { }
+
+        @Override public String describe(float fps) {
+            return String.format("ffmpeg -framerate %s -i %s -pix_fmt yuv420p recap.mp4",
+                    fps, output.resolve("frame%06d.png"));
+        }
+    }
+
+    /**
+     * Every frame's BGRA pixels, one after another in a single file, with
+     * nothing in between.
+     */
+    private static class RawVideo extends FrameWriter {
+        private final FileChannel channel;
+        private final int frameSize;
+
+        // a frame flipped top row first, per encoder thread
+        private final ThreadLocal<ByteBuffer> flipped = new ThreadLocal<ByteBuffer>() {
+            @Override protected ByteBuffer initialValue() {
+                return ByteBuffer.allocateDirect(frameSize);
+            }
+        };
+
+        RawVideo(Path output, int width, int height) throws IOException {
+            super(output, width, height);
+            frameSize = width*height*4;
+            channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        @Override public void write(long index, ByteBuffer bgra) throws IOException {
+            ByteBuffer frame = flipped.get();
+            frame.clear();
+
+            int row = width*4;
+            ByteBuffer source = bgra.duplicate();
+            for (int y = height - 1; y >= 0; --y) {
+                source.limit((y + 1)*row).position(y*row);
+                frame.put(source);
+            }
+            frame.flip();
+
+            long position = index*frameSize;
+            while (frame.hasRemaining()) {
+                position += channel.write(frame, position);
+            }
+        }
+
+        @Override public void close() throws IOException {
+            channel.close();
+        }
+
+        @Override public String describe(float fps) {
+            return String.format("ffmpeg -f rawvideo -pix_fmt bgra -s %dx%d -framerate %s -i %s -pix_fmt yuv420p recap.mp4",
+                    width, height, fps, output);
+        }
+    }
+}
@@ -1,220 +1,446 @@
 package EVERender;
 
-import com.jme3.math.FastMath;
-import com.jme3.math.Vector3f;
-import com.jme3.scene.Geometry;
-import com.jme3.scene.SimpleBatchNode;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Represents a galaxy map. Stores star/jumpgate data and updates the animated
- * parts of the map.
+ * Represents a galaxy map. Stores star/jumpgate data and simulates the kills
+ * and jumps happening in it. Needs no display: the meshes it keeps up to
+ * date are only drawn once a MapView is attached. Each update is timed into
+ * the galaxy's Metrics.
+ *
+ * Kills and jumps are normally drawn as a particle each. Once more particles
+ * are alive than the settings' heatmap threshold, the galaxy switches to
+ * heatmap mode: events only heat their stars and gates in a Heatmap, shown
+ * by brightening the existing star and line meshes, and the particles left
+ * die out. It switches back once the particles the events would need fall
+ * well below the threshold.
  */
 public class Galaxy{
-    private Map<Integer, Star> stars = new HashMap<Integer, Star>();
-    private LinkedList<Star> points = new LinkedList<Star>();
-    private Map<Star, List<Star>> gates = new HashMap<Star, List<Star>>();
+    private final Settings settings;
+    private final StarCatalog stars;
+    private final GateGraph gates;
+    private final KdTree tree;
 
-    private SimpleBatchNode galaxy;
-    public final Geometry skybox;
-    private EveRender main;
+    // kill and jump events, keyed by star index
+    private final EventScheduler kills, jumps;
+
+    // latest activity from the API scraper, not yet applied
+    private final AtomicReference<ActivitySnapshot> activity =
+            new AtomicReference<ActivitySnapshot>();
+
+    private final FlashingPoints flashes;
+    private final MovingPoints movers;
+
+    // latest activity applied by simulate(), not yet shown on the gate lines
+    private final AtomicReference<ActivitySnapshot> traffic =
+            new AtomicReference<ActivitySnapshot>();
+
+    // jumps per hour at which a star's gates are drawn at full intensity
+    private static final float BUSY_JUMPS = 500f;
+
+    // heatmap mode: the heat of every star, whether events go to it instead
+    // of the particle pools, and the particles alive if they all went to the
+    // pools, estimated as particle-seconds spawned per second
+    private final Heatmap heatmap;
+    private boolean heatmapMode = false;
+    private float demand = 0;
+
+    // seconds over which the demand estimate is smoothed
+    private static final float DEMAND_SMOOTHING = 2f;
+
+    // fraction of the threshold below which demand ends heatmap mode
+    private static final float HEATMAP_EXIT = 0.5f;
+
+    // how much brighter a star is at full kill heat
+    private static final float HEAT_GAIN = 3f;
+
+    // render thread: gate intensities from the activity last presented
+    private final float[] trafficIntensity;
+
+    // effects spawned since the Galaxy was created
+    private long killCount = 0, jumpCount = 0;
+
+    // kills and jumps drawn as heat instead of as effects
+    private long heatedCount = 0;
+
+    // set by settingsChanged(): stars to be recolored by present(), events
+    // to be rescheduled by simulate()
+    private boolean recolor = false;
+    private volatile boolean respeed = false;
+
+    private MapView view;
+    private StarField starField;
+    private GateLines gateLines;
+
+    private final Metrics metrics;
 
     /**
-     * Creates a Galaxy. Takes a reference back to an EveRender instance to
-     * load data.
+     * Creates a Galaxy with no activity, and the fixed-size particle pools
+     * for kill and jump effects. The pools are animated on the GPU if shader
+     * effects are enabled in the settings, hand their frames off to the
+     * render thread if the settings give a simulation rate, and are updated
+     * on every core once they hold more effects than the settings' parallel
+     * threshold. The stars' positions are indexed in a KdTree.
      * 
-     * @param main an EveRender instance
+     * @param settings loaded settings
+     * @param stars every star in the map
+     * @param gates the jumpgates between the stars
      */
-    public Galaxy(EveRender main) {
-        this.main = main;
+    public Galaxy(Settings settings, StarCatalog stars, GateGraph gates) {
+        this(settings, stars, gates, new Metrics());
+    }
 
-        main.loadSettings();
-        stars = main.loadStarData();
-        gates = main.loadGateData(stars);
+    /**
+     * Creates a Galaxy that records into existing metrics, such as those of
+     * a view already drawing frames while the galaxy loads.
+     * 
+     * @param settings loaded settings
+     * @param stars every star in the map
+     * @param gates the jumpgates between the stars
+     * @param metrics where updates are timed
+     */
+    public Galaxy(Settings settings, StarCatalog stars, GateGraph gates,
+            Metrics metrics) {
+        this.settings = settings;
+        this.metrics = metrics;
+        this.tree = new KdTree(stars);
+        this.stars = stars;
+        this.gates = gates;
+
+        kills = new EventScheduler(stars.size());
+        jumps = new EventScheduler(stars.size());
 
-        galaxy = new SimpleBatchNode();
-        createEveMap();
-        createParallaxStars(2048);
-        galaxy.batch();
+        heatmap = new Heatmap(stars.size());
+        trafficIntensity = new float[stars.size()];
+
+        flashes = new FlashingPoints(settings.MAX_PARTICLES, settings.SHADER_EFFECTS);
+        movers = new MovingPoints(settings.MAX_PARTICLES, settings.SHADER_EFFECTS);
+
+        if (settings.SIMULATION_RATE > 0) {
+            flashes.enableHandoff();
+            movers.enableHandoff();
+        }
 
-        main.universe.attachChild(galaxy);
-        skybox = main.loadSkybox("textures/starmap.dds");
+        if (settings.PARALLEL_THRESHOLD > 0
+                && Runtime.getRuntime().availableProcessors() > 1) {
+            ForkJoinPool forkJoin = new ForkJoinPool();
+            flashes.enableParallel(forkJoin, settings.PARALLEL_THRESHOLD);
+            movers.enableParallel(forkJoin, settings.PARALLEL_THRESHOLD);
+        }
     }
 
     /**
-     * Creates the EVE map. uses star and gate data to create sprite and line
-     * meshes. Attaches these meshes to main.universe.
+     * Creates the EVE map's meshes: a single point mesh for all stars and an
+     * indexed line mesh over the same points for all jumpgates. Needs no
+     * display, so it may be called on a loading thread before attach().
      */
-    private void createEveMap() {
-        for (Star s : stars.values()) {
-            Geometry g = main.createSprite(
-                    s.color, s.location, s.size, "textures/star2d.dds");
-            galaxy.attachChild(g);
-            s.sprite = g;
-        }
+    public void buildMap() {
+        if (starField != null) return;
 
-        List<Vector3f> edgesList = new ArrayList<Vector3f>();
+        starField = new StarField(stars.size());
+        starField.addAll(stars);
 
-        for (Star s1 : gates.keySet()) {
-            for (Star s2 : gates.get(s1)) {
-                edgesList.add(s1.location);
-                edgesList.add(s2.location);
-            }
-        }
+        gateLines = new GateLines(starField, gates);
+    }
 
-        Vector3f[] edges = new Vector3f[edgesList.size()];
+    /**
+     * Hands the EVE map to a view: the meshes of buildMap(), built now if
+     * they weren't already, and the particle pools.
+     * 
+     * @param view the view to draw the map
+     */
+    public void attach(MapView view) {
+        this.view = view;
 
-        for (int i = 0; i < edges.length; ++i) {
-            edges[i] = edgesList.get(i);
-        }
+        buildMap();
 
-        Geometry g = main.createLine(main.lineColor, edges);
-        main.universe.attachChild(g);
+        view.showStars(starField);
+        view.showGates(gateLines);
+        view.showEffects(flashes, movers);
     }
 
     /**
-     * Creates more 3d stars for a slight parallax effect in front of the
-     * skybox.
-     * 
-     * @param numStars the number of stars to add
-     */
-    private void createParallaxStars(int numStars) {
-        for (int i = 0; i < numStars; ++i) {
-            float radius = FastMath.nextRandomFloat()*16 + 2;
-            radius *= radius;
-            float theta = FastMath.nextRandomFloat()*FastMath.TWO_PI;
-            float phi = FastMath.nextRandomFloat()*FastMath.TWO_PI;
-
-            Vector3f position = new Vector3f(
-                    radius * FastMath.sin(theta) * FastMath.cos(phi),
-                    radius * FastMath.sin(theta) * FastMath.sin(phi),
-                    radius * FastMath.cos(theta)
-                    );
-
-            float size = FastMath.nextRandomFloat()*1.5f*FastMath.sqrt(radius);
-            size *= size;
-
-            Geometry g = main.createSprite(
-                    Vector3f.UNIT_XYZ,
-                    position,
-                    size,
-                    "textures/star2d.dds");
-            main.universe.attachChild(g);
-        }
+     * @return the catalog of every star in the map
+     */
+    public StarCatalog getStars() {
+        return stars;
+    }
+
+    /**
+     * @return the jumpgates between the stars
+     */
+    public GateGraph getGates() {
+        return gates;
+    }
+
+    /**
+     * @return the spatial index over the stars' positions
+     */
+    public KdTree getTree() {
+        return tree;
+    }
+
+    /**
+     * @return the kill effects
+     */
+    public FlashingPoints getFlashes() {
+        return flashes;
+    }
+
+    /**
+     * @return the jump effects
+     */
+    public MovingPoints getMovers() {
+        return movers;
+    }
+
+    /**
+     * @return whether kills and jumps are drawn as a heatmap rather than as
+     *      particles
+     */
+    public boolean isHeatmapMode() {
+        return heatmapMode;
+    }
+
+    /**
+     * @return the number of kill effects spawned so far
+     */
+    public long getKillCount() {
+        return killCount;
+    }
+
+    /**
+     * @return the number of jump effects spawned so far
+     */
+    public long getJumpCount() {
+        return jumpCount;
     }
 
     /**
-     * Sets the kills per hour of a given star.
+     * @return the instrumentation of this galaxy, into which the view and the
+     *      API scraper also record
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Hands new kills and jumps per hour to the galaxy. May be called from
+     * any thread; the latest snapshot is applied all at once at the start of
+     * the next update(), and older ones not yet applied are skipped.
      * 
-     * @param id the ID of the star
-     * @param kills the kills per hour to set
+     * @param snapshot activity for every star, indexed like getStars()
      */
-    public void setKillsPerHour(int id, int kills) {
-        Star s = stars.get(id);
-        if (s != null) s.shipKills = kills;
+    public void publishActivity(ActivitySnapshot snapshot) {
+        activity.set(snapshot);
     }
 
     /**
-     * Sets the jumps per hour of a given star.
+     * Copies a snapshot's kills and jumps into the catalog and reschedules
+     * the events of every star whose activity changed.
+     * 
+     * stars.kills and stars.jumps are the number of ship kills and jumps per
+     * hour on TQ, so each star's events happen at a rate of
+     * [kills or jumps]/60/60 per second.
      * 
-     * @param id the ID of the star
-     * @param kills the jumps per hour to set
+     * @param snapshot the activity to apply
      */
-    public void setJumpsPerHour(int id, int jumps) {
-        Star s = stars.get(id);
-        if (s != null) s.jumps = jumps;
+    private void applyActivity(ActivitySnapshot snapshot) {
+        for (int i = 0; i < snapshot.size(); ++i) {
+            if (stars.kills[i] != snapshot.getKills(i)) {
+                stars.kills[i] = snapshot.getKills(i);
+                kills.setRate(i, stars.kills[i]/60f/60f*settings.SPEEDUP_KILLS);
+            }
+
+            if (stars.jumps[i] != snapshot.getJumps(i)) {
+                stars.jumps[i] = snapshot.getJumps(i);
+                if (gates.degree(i) > 0) {
+                    jumps.setRate(i, stars.jumps[i]/60f/60f*settings.SPEEDUP_JUMPS);
+                }
+            }
+        }
     }
 
     /**
-     * Updates the map. Adds moving and flashing points, updates existing ones,
-     * removes tham if necessary.
+     * Render thread method. Takes on the colors and speeds of the settings
+     * after Settings.update(): recolors the catalog at once, and the stars'
+     * points on the next present(), and reschedules every star's events on
+     * the next simulate().
+     */
+    public void settingsChanged() {
+        settings.colorStars(stars);
+        recolor = true;
+        respeed = true;
+    }
+
+    /**
+     * Updates the map on the render thread: simulate(), then present(). Used
+     * when there is no SimulationThread.
      * 
      * @param tpf delta-time in seconds
      */
     public void update(float tpf) {
-        List<Star> toRemove = new LinkedList<Star>();
-        for (Star s : points) {
-            if (s.update(tpf)) {
-                galaxy.detachChild(s.sprite);
-                toRemove.add(s);
+        simulate(tpf);
+        present();
+    }
+
+    /**
+     * Simulates the map. Applies any activity published since the last
+     * frame, updates existing moving and flashing points, then spawns new
+     * ones for every kill and jump due this frame, or heats the heatmap in
+     * heatmap mode. Called either from update() or, at a fixed rate, from a
+     * SimulationThread.
+     * 
+     * @param tpf delta-time in seconds
+     */
+    public void simulate(float tpf) {
+        long start = System.nanoTime();
+
+        if (respeed) {
+            respeed = false;
+            for (int i = 0; i < stars.size(); ++i) {
+                kills.setRate(i, stars.kills[i]/60f/60f*settings.SPEEDUP_KILLS);
+                if (gates.degree(i) > 0) {
+                    jumps.setRate(i, stars.jumps[i]/60f/60f*settings.SPEEDUP_JUMPS);
+                }
             }
         }
 
-        List<Star> toAdd = new LinkedList<Star>();
-
-        /*
-         * tpf is delta-t in seconds. s.shipKills and s.jumps are the number of
-         * ship kills and jumps per hour on TQ. The number of kills and jumps
-         * that happen in a single tpf (and therefore the probability of one
-         * being generated) is [kills or jumps]/60/60*tpf.
-         */
-        for (Star s : stars.values()) {
-            if (FastMath.nextRandomFloat() < s.shipKills/60f/60f*tpf*main.SPEEDUP_KILLS) {
-                toAdd.add(createFlashingPoint(s));
-            }
+        ActivitySnapshot snapshot = activity.getAndSet(null);
+        if (snapshot != null) {
+            applyActivity(snapshot);
+            traffic.set(snapshot);
         }
 
-        for (Star s : stars.values()) {
-            if (FastMath.nextRandomFloat() < s.jumps/60f/60f*tpf*main.SPEEDUP_JUMPS) {
-                List<Star> destinations = gates.get(s);
-                if (destinations != null) {
-                    int random = FastMath.nextRandomInt(0, destinations.size()-1);
-                    toAdd.add(createMovingPoint(s, destinations.get(random)));
-                }
+        long applied = System.nanoTime();
+        metrics.record(Metrics.Phase.ACTIVITY, applied - start);
+
+        flashes.update(tpf);
+        movers.update(tpf);
+
+        long updated = System.nanoTime();
+        metrics.record(Metrics.Phase.EFFECTS, updated - applied);
+
+        kills.advance(tpf);
+        jumps.advance(tpf);
+
+        // particle-seconds the events need, whether or not they get them
+        float spawnedLife = 0;
+
+        int i;
+        while ((i = kills.next()) >= 0) {
+            if (heatmapMode) {
+                heatmap.addKill(i);
+                ++heatedCount;
+            } else {
+                flashes.spawn(stars, i);
             }
+            spawnedLife += FlashingPoints.LIFETIME;
+            ++killCount;
         }
 
-        for (Star s : toAdd) {
-            points.add(s);
+        while ((i = jumps.next()) >= 0) {
+            int dest = gates.randomNeighbor(i);
+            if (heatmapMode) {
+                heatmap.addJump(i, dest);
+                ++heatedCount;
+            } else {
+                movers.spawn(stars, i, dest);
+            }
+            spawnedLife += MovingPoints.lifetime(stars, i, dest);
+            ++jumpCount;
         }
 
-        for (Star s : toRemove) {
-            points.remove(s);
-        }
+        heatmap.update(tpf);
+        updateMode(tpf, spawnedLife);
+
+        metrics.record(Metrics.Phase.SPAWN, System.nanoTime() - updated);
+        metrics.recordEffects(tpf,
+                flashes.getCount() + movers.getCount(),
+                killCount + jumpCount,
+                flashes.getDropped() + movers.getDropped(),
+                heatedCount,
+                flashes.getRetired() + movers.getRetired());
     }
 
     /**
-     * Creates a flashing point representing a kill in a given system.
-     * 
-     * @param s the star at which to create the point
-     * @return the new point
+     * Switches between particle and heatmap mode. Demand is the particles
+     * that would be alive if every event had one: by Little's law, the
+     * particle-seconds spawned per second.
+     *
+     * @param tpf delta-time in seconds
+     * @param spawnedLife particle-seconds needed by this update's events
      */
-    private Star createFlashingPoint(Star s) {
-        FlashingPoint p = new FlashingPoint(
-                s.location,
-                s.size*0.25f+0.25f,
-                new Vector3f(s.color.x, s.color.y, s.color.z));
+    private void updateMode(float tpf, float spawnedLife) {
+        if (tpf > 0) {
+            float smoothing = 1 - (float)Math.exp(-tpf/DEMAND_SMOOTHING);
+            demand += (spawnedLife/tpf - demand)*smoothing;
+        }
 
-        Geometry g = main.createSprite(
-                p.color, p.location, p.size, "textures/flashingpoint.dds");
-        galaxy.attachChild(g);
-        p.sprite = g;
-        return p;
+        int threshold = settings.HEATMAP_THRESHOLD;
+        if (threshold <= 0) return;
+
+        // pools limited below the threshold switch once they're mostly full
+        threshold = Math.min(threshold,
+                (flashes.getLimit() + movers.getLimit())*3/4);
+
+        // exact in both CPU- and shader-driven pools, which retire every
+        // expired particle each update, so short flashes never hide behind
+        // a long-lived mover
+        int live = flashes.getCount() + movers.getCount();
+        if (!heatmapMode && live >= threshold) {
+            // the estimate lags behind a sudden rise, but no fewer particles
+            // are needed than are alive
+            demand = Math.max(demand, live);
+            heatmapMode = true;
+            System.out.println("Heatmap mode on: " + live + " effects alive.");
+        } else if (heatmapMode && demand < threshold*HEATMAP_EXIT) {
+            heatmapMode = false;
+            System.out.println("Heatmap mode off: about " + (int)demand
+                    + " effects needed.");
+        }
     }
 
     /**
-     * Creates a moving point representing a jump from one system to another.
-     * 
-     * @param s the star at which to create the point
-     * @param dest the star towards which to travel
-     * @return the new point
-     */
-    private Star createMovingPoint(Star s, Star dest) {
-        MovingPoint p = new MovingPoint(
-                s.location,
-                FastMath.nextRandomFloat()*.1f + .1f,
-                new Vector3f(s.color.x, s.color.y, s.color.z),
-                dest,
-                s);
-
-        Geometry g = main.createSprite(
-                p.color, p.location, p.size, "textures/movingpoint.dds");
-        galaxy.attachChild(g);
-        p.sprite = g;
-        return p;
+     * Render thread method. Shows the latest simulated effects: points the
+     * pools' meshes at the frames last handed off by the simulation thread,
+     * if any, and brightens the stars and gate lines from the heatmap and
+     * from the activity last applied, then tells the view.
+     */
+    public void present() {
+        long start = System.nanoTime();
+
+        flashes.present();
+        movers.present();
+
+        boolean heated = heatmap.acquire();
+        ActivitySnapshot snapshot = traffic.getAndSet(null);
+        if (snapshot != null) {
+            for (int i = 0; i < snapshot.size(); ++i) {
+                float busy = Math.min(snapshot.getJumps(i)/BUSY_JUMPS, 1f);
+                trafficIntensity[i] = (float)Math.sqrt(busy);
+            }
+        }
+
+        if ((heated || snapshot != null) && gateLines != null) {
+            for (int i = 0; i < stars.size(); ++i) {
+                gateLines.setIntensity(i,
+                        Math.max(trafficIntensity[i], heatmap.getGateIntensity(i)));
+            }
+            gateLines.flush();
+        }
+
+        if ((heated || recolor) && starField != null) {
+            recolor = false;
+            for (int i = 0; i < stars.size(); ++i) {
+                float glow = 1 + HEAT_GAIN*heatmap.getStarIntensity(i);
+                starField.setColor(i, stars.r[i]*glow, stars.g[i]*glow, stars.b[i]*glow);
+            }
+        }
+
+        if (view != null) view.effectsUpdated(flashes, movers);
+
+        metrics.record(Metrics.Phase.PRESENT, System.nanoTime() - start);
     }
 }
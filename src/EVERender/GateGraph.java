@@ -0,0 +1,129 @@
+package EVERender;
+
+import com.jme3.math.FastMath;
+import java.util.Arrays;
+
+/**
+ * The jumpgate network as an undirected graph over dense star indices, stored
+ * in compressed sparse row form: the neighbors of star i are
+ * neighbors[offsets[i]] to neighbors[offsets[i+1]-1]. Built once at load
+ * time and never modified, so lookups need no boxing or hashing.
+ */
+public class GateGraph {
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    /**
+     * Builds a GateGraph from a list of gates. Each gate connects both of its
+     * stars; gates listed more than once, or in both directions, are only
+     * stored once.
+     *
+     * @param systems the number of stars, indexed from zero
+     * @param from the first star of each gate
+     * @param to the second star of each gate
+     * @param gates the number of gates in from and to
+     */
+    public GateGraph(int systems, int[] from, int[] to, int gates) {
+        int[] start = new int[systems + 1];
+        for (int k = 0; k < gates; ++k) {
+            ++start[from[k] + 1];
+            ++start[to[k] + 1];
+        }
+        for (int i = 0; i < systems; ++i) {
+            start[i + 1] += start[i];
+        }
+
+        int[] all = new int[gates*2];
+        int[] fill = Arrays.copyOf(start, systems);
+        for (int k = 0; k < gates; ++k) {
+            all[fill[from[k]]++] = to[k];
+            all[fill[to[k]]++] = from[k];
+        }
+
+        // sort each row and drop duplicates, compacting rows as we go
+        offsets = new int[systems + 1];
+        int n = 0;
+        for (int i = 0; i < systems; ++i) {
+            Arrays.sort(all, start[i], start[i + 1]);
+            offsets[i] = n;
+            for (int k = start[i]; k < start[i + 1]; ++k) {
+                if (n == offsets[i] || all[n - 1] != all[k]) {
+                    all[n++] = all[k];
+                }
+            }
+        }
+        offsets[systems] = n;
+
+        neighbors = Arrays.copyOf(all, n);
+    }
+
+    /**
+     * Creates a GateGraph from arrays already in compressed sparse row form,
+     * as written by UniverseCache. The arrays are not copied.
+     *
+     * @param offsets the start of each star's row, plus the end of the last
+     * @param neighbors the rows of connected star indices
+     */
+    public GateGraph(int[] offsets, int[] neighbors) {
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    /**
+     * @return the number of stars in the graph
+     */
+    public int getSystemCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return the number of gates in the graph, counting each pair once
+     */
+    public int getGateCount() {
+        return neighbors.length / 2;
+    }
+
+    /**
+     * @param star a star index
+     * @return the number of stars connected to the given star
+     */
+    public int degree(int star) {
+        return offsets[star + 1] - offsets[star];
+    }
+
+    /**
+     * @param star a star index
+     * @param k which neighbor to return, from 0 to degree(star)-1
+     * @return the index of the k-th star connected to the given star
+     */
+    public int neighbor(int star, int k) {
+        return neighbors[offsets[star] + k];
+    }
+
+    /**
+     * @return the start of each star's row, plus the end of the last row
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return the rows of connected star indices
+     */
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    /**
+     * Picks a uniformly random neighbor of a star in constant time.
+     *
+     * @param star a star index
+     * @return the index of a connected star, or -1 if the star has no gates
+     */
+    public int randomNeighbor(int star) {
+        int degree = degree(star);
+        if (degree == 0) return -1;
+
+        return neighbors[offsets[star] + FastMath.nextRandomInt(0, degree - 1)];
+    }
+}
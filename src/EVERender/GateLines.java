@@ -0,0 +1,151 @@
+package EVERender;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Every jumpgate of the map in a single indexed Lines mesh. The mesh shares
+ * its vertices, one per star, with the StarField's mesh, and draws each gate
+ * once as a pair of indices into them.
+ *
+ * Each vertex also has an intensity, set from the star's jump activity, that
+ * brightens the lines meeting at it. Intensities are kept in a vertex color
+ * buffer multiplied with the line material's color; changed intensities are
+ * written into the buffer in place, over the range of vertices that changed,
+ * when flush() is called.
+ */
+public class GateLines {
+    // vertex alpha of a line with no traffic, and added at full intensity;
+    // twice what a single draw needs, since each gate used to be drawn twice
+    // additively and quiet lanes should look as they did
+    private static final float BASE = 2f;
+    private static final float GAIN = 14f;
+
+    private final int vertexCount;
+    private final int edgeCount;
+    private final float[] intensity;
+    private final FloatBuffer colors;
+    private final Mesh mesh;
+
+    // vertices whose intensity changed since the last flush(), or empty
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = 0;
+
+    /**
+     * Creates the gate mesh with no traffic.
+     *
+     * @param field the stars the gates connect, whose positions are shared
+     * @param gates the gates between the stars
+     */
+    public GateLines(StarField field, GateGraph gates) {
+        vertexCount = gates.getSystemCount();
+        intensity = new float[vertexCount];
+
+        colors = BufferUtils.createFloatBuffer(vertexCount*4);
+        for (int i = 0; i < vertexCount; ++i) {
+            colors.put(1f).put(1f).put(1f).put(BASE);
+        }
+        colors.flip();
+
+        mesh = new Mesh();
+        mesh.setMode(Mesh.Mode.Lines);
+        mesh.setBuffer(field.getMesh().getBuffer(VertexBuffer.Type.Position));
+        mesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+
+        // each gate is listed from both ends; keep the one from its lower end
+        int edges = 0;
+        for (int i = 0; i < vertexCount; ++i) {
+            for (int k = 0; k < gates.degree(i); ++k) {
+                if (i < gates.neighbor(i, k)) ++edges;
+            }
+        }
+        edgeCount = edges;
+
+        if (vertexCount <= 65536) {
+            ShortBuffer indices = BufferUtils.createShortBuffer(edgeCount*2);
+            for (int i = 0; i < vertexCount; ++i) {
+                for (int k = 0; k < gates.degree(i); ++k) {
+                    int j = gates.neighbor(i, k);
+                    if (i < j) indices.put((short)i).put((short)j);
+                }
+            }
+            indices.flip();
+            mesh.setBuffer(VertexBuffer.Type.Index, 2, indices);
+        } else {
+            IntBuffer indices = BufferUtils.createIntBuffer(edgeCount*2);
+            for (int i = 0; i < vertexCount; ++i) {
+                for (int k = 0; k < gates.degree(i); ++k) {
+                    int j = gates.neighbor(i, k);
+                    if (i < j) indices.put(i).put(j);
+                }
+            }
+            indices.flip();
+            mesh.setBuffer(VertexBuffer.Type.Index, 2, indices);
+        }
+
+        mesh.updateCounts();
+        mesh.updateBound();
+    }
+
+    /**
+     * Sets how busy the gates of a star are. Only recorded until flush().
+     *
+     * @param star the star's index
+     * @param value from 0, no traffic, to 1, the busiest
+     */
+    public void setIntensity(int star, float value) {
+        if (intensity[star] == value) return;
+
+        intensity[star] = value;
+        if (star < dirtyFrom) dirtyFrom = star;
+        if (star + 1 > dirtyTo) dirtyTo = star + 1;
+    }
+
+    /**
+     * @param star a star's index
+     * @return the intensity of the star's gates
+     */
+    public float getIntensity(int star) {
+        return intensity[star];
+    }
+
+    /**
+     * Writes intensities changed since the last call into the color buffer
+     * and marks it for upload. Must be called on the render thread.
+     *
+     * Only the changed range of the buffer is rewritten, but jME uploads
+     * vertex buffers whole, so the upload itself covers every vertex.
+     *
+     * @return whether anything changed
+     */
+    public boolean flush() {
+        if (dirtyFrom >= dirtyTo) return false;
+
+        for (int i = dirtyFrom; i < dirtyTo; ++i) {
+            colors.put(i*4 + 3, BASE + GAIN*intensity[i]);
+        }
+        mesh.getBuffer(VertexBuffer.Type.Color).setUpdateNeeded();
+
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = 0;
+        return true;
+    }
+
+    /**
+     * @return the number of lines, one per gate
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return the Lines mesh of every gate
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+}
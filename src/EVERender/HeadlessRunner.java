@@ -0,0 +1,155 @@
+package EVERender;
+
+import java.util.Random;
+
+/**
+ * Runs a Galaxy without a display, at a fixed timestep and as fast as
+ * possible, and prints how many kills and jumps it simulates, then the
+ * galaxy's Metrics. Used to
+ * load-test spawn rates and memory on machines without a GPU.
+ * 
+ * Settings and the map are loaded like EveRender loads them. Activity is
+ * made up with a fixed seed unless --api is given, in which case it is read
+ * from the EVE API as it would be on screen.
+ * 
+ * Usage: HeadlessRunner [seconds [fps]] [--api]
+ */
+public class HeadlessRunner {
+    // simulated seconds between progress reports
+    private static final float REPORT_INTERVAL = 60;
+
+    public static void main(String[] args) throws InterruptedException {
+        float seconds = 600;
+        float fps = 60;
+        boolean api = false;
+
+        int positional = 0;
+        for (String arg : args) {
+            if (arg.equals("--api")) {
+                api = true;
+            } else if (positional == 0) {
+                seconds = Float.parseFloat(arg);
+                ++positional;
+            } else if (positional == 1) {
+                fps = Float.parseFloat(arg);
+                ++positional;
+            } else {
+                System.err.println("Usage: HeadlessRunner [seconds [fps]] [--api]");
+                System.exit(1);
+            }
+        }
+
+        Settings settings = new Settings();
+        settings.load();
+
+        long loadStart = System.nanoTime();
+        UniverseLoader loader = new UniverseLoader(settings);
+        loader.load();
+        System.out.printf("Loaded %d stars and %d gates in %.1f ms%n",
+                loader.getStars().size(), loader.getGates().getGateCount(),
+                (System.nanoTime() - loadStart)/1e6);
+
+        Galaxy galaxy = new Galaxy(settings, loader.getStars(), loader.getGates());
+        galaxy.getMetrics().register();
+
+        APIScraper scraper = null;
+        if (api) {
+            scraper = new APIScraper(galaxy, settings.API_URL);
+            scraper.start();
+        } else {
+            galaxy.publishActivity(syntheticActivity(
+                    galaxy.getStars(), galaxy.getGates(), 42));
+        }
+
+        run(galaxy, seconds, 1/fps);
+
+        if (scraper != null) {
+            scraper.terminate();
+            scraper.join();
+        }
+    }
+
+    /**
+     * Updates a galaxy for a number of simulated seconds, reporting progress
+     * every REPORT_INTERVAL simulated seconds and throughput at the end.
+     * 
+     * @param galaxy the galaxy to update
+     * @param seconds how long to simulate
+     * @param tpf the timestep, in seconds
+     */
+    public static void run(Galaxy galaxy, float seconds, float tpf) {
+        long frames = Math.max(1, Math.round(seconds/tpf));
+        long framesPerReport = Math.max(1, Math.round(REPORT_INTERVAL/tpf));
+
+        long start = System.nanoTime();
+        long reportStart = start;
+        long reportEvents = 0;
+
+        for (long frame = 1; frame <= frames; ++frame) {
+            galaxy.update(tpf);
+
+            if (frame % framesPerReport == 0 || frame == frames) {
+                long now = System.nanoTime();
+                long events = galaxy.getKillCount() + galaxy.getJumpCount();
+                long frameCount = frame % framesPerReport == 0
+                        ? framesPerReport : frame % framesPerReport;
+
+                System.out.printf(
+                        "t=%.0fs  kills %d  jumps %d  events/s %.1f  live %d+%d"
+                        + "  dropped %d+%d  %.1f us/frame  heap %d MB%n",
+                        frame*tpf,
+                        galaxy.getKillCount(), galaxy.getJumpCount(),
+                        (events - reportEvents)/(frameCount*tpf),
+                        galaxy.getFlashes().getCount(), galaxy.getMovers().getCount(),
+                        galaxy.getFlashes().getDropped(), galaxy.getMovers().getDropped(),
+                        (now - reportStart)/1e3/frameCount,
+                        usedHeap() >> 20);
+
+                reportStart = now;
+                reportEvents = events;
+            }
+        }
+
+        double wall = (System.nanoTime() - start)/1e9;
+        long events = galaxy.getKillCount() + galaxy.getJumpCount();
+        System.out.printf(
+                "Simulated %.0f s in %.2f s: %d frames (%.0f frames/s), "
+                + "%d events (%.1f per simulated s, %.0f per wall s)%n",
+                frames*tpf, wall, frames, frames/wall,
+                events, events/(frames*tpf), events/wall);
+        System.out.println(galaxy.getMetrics().describe());
+    }
+
+    /**
+     * Makes up kills and jumps per hour for every star, roughly like a busy
+     * hour on TQ: about 60% of systems with gates have jumps, averaging 150
+     * an hour, and 15% of systems have kills, averaging 10 an hour.
+     * 
+     * @param stars every star in the map
+     * @param gates the jumpgates between the stars
+     * @param seed the seed of the random numbers
+     * @return the activity
+     */
+    public static ActivitySnapshot syntheticActivity(StarCatalog stars,
+            GateGraph gates, long seed) {
+        Random random = new Random(seed);
+        int[] kills = new int[stars.size()];
+        int[] jumps = new int[stars.size()];
+
+        for (int i = 0; i < stars.size(); ++i) {
+            if (random.nextFloat() < 0.15f) {
+                kills[i] = 1 + (int)(-Math.log(1 - random.nextDouble())*10);
+            }
+            if (random.nextFloat() < 0.6f && gates.degree(i) > 0) {
+                jumps[i] = 1 + (int)(-Math.log(1 - random.nextDouble())*150);
+            }
+        }
+
+        return new ActivitySnapshot(kills, jumps, System.currentTimeMillis());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,128 @@
+package EVERender;
+
+/**
+ * Kills and jumps collapsed into a heat per star, for showing activity at
+ * rates too high to draw a particle per event. Each kill heats its star and
+ * each jump heats the gates at both of its ends; heat then decays
+ * exponentially, so a steady rate of events settles at a steady glow. The
+ * cost of an update depends only on the number of stars, never on the
+ * number of events.
+ *
+ * Heat is accumulated on the simulation thread, which publishes intensities
+ * from 0 to 1 for the render thread through a TripleBuffer.
+ */
+public class Heatmap {
+    // seconds for heat to fall to 1/e of its value
+    private static final float DECAY = 2f;
+
+    // heat added by one event
+    private static final float KILL_HEAT = 0.5f;
+    private static final float JUMP_HEAT = 0.05f;
+
+    // heat below which a star counts as cold
+    private static final float COLD = 1e-3f;
+
+    private final int size;
+    private final float[] killHeat, jumpHeat;
+
+    // star intensities, then gate intensities, per star
+    private final TripleBuffer<float[]> frames;
+
+    // whether any heat is left to decay and publish
+    private boolean warm = false;
+
+    /**
+     * Creates a cold Heatmap.
+     *
+     * @param size the number of stars
+     */
+    public Heatmap(int size) {
+        this.size = size;
+        killHeat = new float[size];
+        jumpHeat = new float[size];
+        frames = new TripleBuffer<float[]>(
+                new float[size*2], new float[size*2], new float[size*2]);
+    }
+
+    /**
+     * Simulation thread method. Heats a star for a kill.
+     *
+     * @param star the star's index
+     */
+    public void addKill(int star) {
+        killHeat[star] += KILL_HEAT;
+        warm = true;
+    }
+
+    /**
+     * Simulation thread method. Heats the gates at both ends of a jump.
+     *
+     * @param origin the index of the star jumped from
+     * @param dest the index of the star jumped to
+     */
+    public void addJump(int origin, int dest) {
+        jumpHeat[origin] += JUMP_HEAT;
+        jumpHeat[dest] += JUMP_HEAT;
+        warm = true;
+    }
+
+    /**
+     * Simulation thread method. Decays every star's heat and publishes the
+     * resulting intensities. Does nothing once every star has gone cold.
+     *
+     * @param tpf delta-time in seconds
+     */
+    public void update(float tpf) {
+        if (!warm) return;
+
+        float decay = (float)Math.exp(-tpf/DECAY);
+        float[] frame = frames.getBack();
+        boolean hot = false;
+
+        for (int i = 0; i < size; ++i) {
+            killHeat[i] *= decay;
+            jumpHeat[i] *= decay;
+            if (killHeat[i] < COLD) killHeat[i] = 0;
+            if (jumpHeat[i] < COLD) jumpHeat[i] = 0;
+            hot |= killHeat[i] > 0 || jumpHeat[i] > 0;
+
+            frame[i] = 1 - (float)Math.exp(-killHeat[i]);
+            frame[size + i] = 1 - (float)Math.exp(-jumpHeat[i]);
+        }
+
+        frames.publish();
+
+        // the all-cold frame has just been published; nothing more to show
+        warm = hot;
+    }
+
+    /**
+     * Render thread method. Takes the latest intensities, if any were
+     * published since the last call.
+     *
+     * @return whether the intensities changed
+     */
+    public boolean acquire() {
+        return frames.acquire();
+    }
+
+    /**
+     * Render thread method.
+     *
+     * @param star a star's index
+     * @return how bright the star's kills make it, from 0 to 1
+     */
+    public float getStarIntensity(int star) {
+        return frames.getFront()[star];
+    }
+
+    /**
+     * Render thread method.
+     *
+     * @param star a star's index
+     * @return how bright the star's jumps make its gates, from 0 to 1
+     */
+    public float getGateIntensity(int star) {
+        return frames.getFront()[size + star];
+    }
+}
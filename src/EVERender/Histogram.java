@@ -0,0 +1,182 @@
+package EVERender;
+
+import java.beans.ConstructorProperties;
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of non-negative long values, such as durations in
+ * nanoseconds. Values are counted in buckets whose width grows with the
+ * value: every power of two is split into 8 buckets, so percentiles are
+ * within 12.5% of the true value, and values below 16 are exact. Recording
+ * never allocates.
+ *
+ * Values may be recorded and read from different threads.
+ */
+public class Histogram {
+    // values below LINEAR are counted exactly, one bucket each
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - 4)*SUB_BUCKETS;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    /**
+     * Counts a value. Negative values are counted as zero.
+     *
+     * @param value the value to count
+     */
+    public synchronized void record(long value) {
+        if (value < 0) value = 0;
+
+        ++buckets[bucket(value)];
+        ++count;
+        sum += value;
+        if (value > max) max = value;
+    }
+
+    /**
+     * Counts every value counted by another histogram, as if recorded here.
+     *
+     * @param other the histogram to add
+     */
+    public synchronized void add(Histogram other) {
+        synchronized (other) {
+            for (int i = 0; i < BUCKETS; ++i) {
+                buckets[i] += other.buckets[i];
+            }
+            count += other.count;
+            sum += other.sum;
+            if (other.max > max) max = other.max;
+        }
+    }
+
+    /**
+     * Forgets every value counted so far.
+     */
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * @return the number of values counted
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the largest value counted, or 0 if none were
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the mean of the values counted, or 0 if none were
+     */
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double)sum/count;
+    }
+
+    /**
+     * Returns the value below which a given fraction of the values counted
+     * fall, rounded up to the end of its bucket and never more than the
+     * largest value counted.
+     *
+     * @param fraction the fraction, from 0 to 1, such as 0.99
+     * @return the percentile, or 0 if no values were counted
+     */
+    public synchronized long getPercentile(double fraction) {
+        if (count == 0) return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(fraction*count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += buckets[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * @return the count, mean and main percentiles, taken together
+     */
+    public synchronized Summary getSummary() {
+        return new Summary(count, getMean(), getPercentile(0.5),
+                getPercentile(0.9), getPercentile(0.99), max);
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR) return (int)value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 4)*SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value counted in a bucket
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+
+        int exponent = (bucket - LINEAR)/SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long)(SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + width - 1;
+    }
+
+    /**
+     * A histogram's statistics at one point in time. Returned over JMX as
+     * composite data.
+     */
+    public static class Summary {
+        private final long count;
+        private final double mean;
+        private final long p50, p90, p99;
+        private final long max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p90", "p99", "max"})
+        public Summary(long count, double mean, long p50, long p90, long p99,
+                long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
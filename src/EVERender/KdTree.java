@@ -0,0 +1,355 @@
+package EVERender;
+
+import com.jme3.math.Plane;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector3f;
+import java.util.Arrays;
+
+/**
+ * A k-d tree over the positions of a StarCatalog's stars, for finding the
+ * stars near a point, near a ray or inside a view frustum without scanning
+ * every star. Stars don't move, so the tree is built once and never changes;
+ * queries may be made from any thread.
+ *
+ * Each node splits its stars at the median along the widest axis of their
+ * bounding box, until LEAF_SIZE or fewer remain. Nodes are kept in parallel
+ * arrays, and each covers a contiguous range of order[].
+ */
+public class KdTree {
+    private static final int LEAF_SIZE = 16;
+
+    // deep enough for any tree over an int's worth of stars
+    private static final int MAX_DEPTH = 64;
+
+    private final StarCatalog stars;
+
+    // star indices, arranged so that every node covers a range
+    private final int[] order;
+
+    // per node: its range of order[], its children or -1 for a leaf, and
+    // the bounding box of its stars
+    private final int[] from, to;
+    private final int[] left, right;
+    private final float[] minX, minY, minZ, maxX, maxY, maxZ;
+    private int nodeCount = 0;
+
+    /**
+     * Builds a tree over every star in a catalog.
+     *
+     * @param stars the stars, which must not move afterwards
+     */
+    public KdTree(StarCatalog stars) {
+        this.stars = stars;
+
+        int count = stars.size();
+        order = new int[count];
+        for (int i = 0; i < count; ++i) order[i] = i;
+
+        // splits only happen above LEAF_SIZE, so no leaf is under half full
+        int maxNodes = 2*(count/(LEAF_SIZE/2) + 1);
+        from = new int[maxNodes];
+        to = new int[maxNodes];
+        left = new int[maxNodes];
+        right = new int[maxNodes];
+        minX = new float[maxNodes];
+        minY = new float[maxNodes];
+        minZ = new float[maxNodes];
+        maxX = new float[maxNodes];
+        maxY = new float[maxNodes];
+        maxZ = new float[maxNodes];
+
+        build(0, count);
+    }
+
+    /**
+     * @return the number of stars in the tree
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * Finds every star within a distance of a point.
+     *
+     * @param x the point
+     * @param y the point
+     * @param z the point
+     * @param radius the distance
+     * @return the indices of the stars found, in no particular order
+     */
+    public int[] within(float x, float y, float z, float radius) {
+        float radiusSq = radius*radius;
+        Results results = new Results();
+
+        int[] stack = new int[MAX_DEPTH];
+        int top = 0;
+        if (nodeCount > 0) stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            if (boxDistanceSq(node, x, y, z) > radiusSq) continue;
+
+            if (left[node] >= 0) {
+                stack[top++] = left[node];
+                stack[top++] = right[node];
+                continue;
+            }
+
+            for (int k = from[node]; k < to[node]; ++k) {
+                int i = order[k];
+                float dx = stars.x[i] - x, dy = stars.y[i] - y, dz = stars.z[i] - z;
+                if (dx*dx + dy*dy + dz*dz <= radiusSq) results.add(i);
+            }
+        }
+
+        return results.toArray();
+    }
+
+    /**
+     * Finds the star closest to a ray, such as one cast from the cursor,
+     * among the stars in front of its origin.
+     *
+     * @param ray the ray, whose direction must be normalized
+     * @param maxDistance how far from the ray a star may be
+     * @return the index of the closest star, or -1 if none is within
+     *      maxDistance
+     */
+    public int pick(Ray ray, float maxDistance) {
+        Vector3f origin = ray.getOrigin(), direction = ray.getDirection();
+        float ox = origin.x, oy = origin.y, oz = origin.z;
+        float dx = direction.x, dy = direction.y, dz = direction.z;
+
+        int best = -1;
+        float bestSq = maxDistance*maxDistance;
+
+        int[] stack = new int[MAX_DEPTH];
+        int top = 0;
+        if (nodeCount > 0) stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+
+            // the box lies inside its bounding sphere, so no star in it is
+            // closer to the ray than the sphere is
+            float cx = (minX[node] + maxX[node])/2;
+            float cy = (minY[node] + maxY[node])/2;
+            float cz = (minZ[node] + maxZ[node])/2;
+            float sx = maxX[node] - minX[node];
+            float sy = maxY[node] - minY[node];
+            float sz = maxZ[node] - minZ[node];
+            float sphere = (float)Math.sqrt(sx*sx + sy*sy + sz*sz)/2;
+            float bound = (float)Math.sqrt(rayDistanceSq(ox, oy, oz, dx, dy, dz, cx, cy, cz)) - sphere;
+            if (bound > 0 && bound*bound > bestSq) continue;
+
+            if (left[node] >= 0) {
+                stack[top++] = left[node];
+                stack[top++] = right[node];
+                continue;
+            }
+
+            for (int k = from[node]; k < to[node]; ++k) {
+                int i = order[k];
+                float px = stars.x[i] - ox, py = stars.y[i] - oy, pz = stars.z[i] - oz;
+                if (px*dx + py*dy + pz*dz < 0) continue;
+
+                float distSq = rayDistanceSq(ox, oy, oz, dx, dy, dz,
+                        stars.x[i], stars.y[i], stars.z[i]);
+                if (distSq < bestSq) {
+                    bestSq = distSq;
+                    best = i;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Finds every star inside a view frustum, given as the planes of a
+     * Camera in the stars' coordinate space. A star is inside when it is on
+     * the positive side of every plane, as with Camera.getWorldPlane().
+     *
+     * Whole nodes inside the frustum are taken without testing their stars.
+     *
+     * @param planes the frustum's planes, facing inwards
+     * @return the indices of the stars inside, in no particular order
+     */
+    public int[] inFrustum(Plane[] planes) {
+        Results results = new Results();
+
+        int[] stack = new int[MAX_DEPTH];
+        int top = 0;
+        if (nodeCount > 0) stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+
+            boolean outside = false, contained = true;
+            for (int p = 0; p < planes.length && !outside; ++p) {
+                Vector3f n = planes[p].getNormal();
+                float c = planes[p].getConstant();
+
+                // the box's corners furthest along and against the normal
+                float far = n.x*(n.x >= 0 ? maxX[node] : minX[node])
+                        + n.y*(n.y >= 0 ? maxY[node] : minY[node])
+                        + n.z*(n.z >= 0 ? maxZ[node] : minZ[node]) - c;
+                float near = n.x*(n.x >= 0 ? minX[node] : maxX[node])
+                        + n.y*(n.y >= 0 ? minY[node] : maxY[node])
+                        + n.z*(n.z >= 0 ? minZ[node] : maxZ[node]) - c;
+                if (far < 0) outside = true;
+                if (near < 0) contained = false;
+            }
+            if (outside) continue;
+
+            if (contained) {
+                for (int k = from[node]; k < to[node]; ++k) results.add(order[k]);
+            } else if (left[node] >= 0) {
+                stack[top++] = left[node];
+                stack[top++] = right[node];
+            } else {
+                for (int k = from[node]; k < to[node]; ++k) {
+                    if (inside(order[k], planes)) results.add(order[k]);
+                }
+            }
+        }
+
+        return results.toArray();
+    }
+
+    /**
+     * @return whether a star is on the positive side of every plane
+     */
+    private boolean inside(int i, Plane[] planes) {
+        for (Plane plane : planes) {
+            Vector3f n = plane.getNormal();
+            if (n.x*stars.x[i] + n.y*stars.y[i] + n.z*stars.z[i] - plane.getConstant() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the node covering order[lo, hi) and everything below it.
+     *
+     * @return the new node
+     */
+    private int build(int lo, int hi) {
+        int node = nodeCount++;
+        from[node] = lo;
+        to[node] = hi;
+
+        minX[node] = minY[node] = minZ[node] = Float.MAX_VALUE;
+        maxX[node] = maxY[node] = maxZ[node] = -Float.MAX_VALUE;
+        for (int k = lo; k < hi; ++k) {
+            int i = order[k];
+            minX[node] = Math.min(minX[node], stars.x[i]);
+            minY[node] = Math.min(minY[node], stars.y[i]);
+            minZ[node] = Math.min(minZ[node], stars.z[i]);
+            maxX[node] = Math.max(maxX[node], stars.x[i]);
+            maxY[node] = Math.max(maxY[node], stars.y[i]);
+            maxZ[node] = Math.max(maxZ[node], stars.z[i]);
+        }
+
+        if (hi - lo <= LEAF_SIZE) {
+            left[node] = right[node] = -1;
+            return node;
+        }
+
+        float spanX = maxX[node] - minX[node];
+        float spanY = maxY[node] - minY[node];
+        float spanZ = maxZ[node] - minZ[node];
+        int axis = spanX >= spanY && spanX >= spanZ ? 0 : spanY >= spanZ ? 1 : 2;
+
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi, mid, axis);
+
+        // children are numbered after their parent, so build them in order
+        int l = build(lo, mid);
+        int r = build(mid, hi);
+        left[node] = l;
+        right[node] = r;
+        return node;
+    }
+
+    /**
+     * Partially sorts order[lo, hi) along an axis so that order[nth] holds
+     * the star that would be there if it were sorted, with no star after it
+     * lower and none before it higher.
+     */
+    private void select(int lo, int hi, int nth, int axis) {
+        --hi;
+        while (lo < hi) {
+            float pivot = coordinate(order[(lo + hi) >>> 1], axis);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (coordinate(order[i], axis) < pivot) ++i;
+                while (coordinate(order[j], axis) > pivot) --j;
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    ++i;
+                    --j;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private float coordinate(int i, int axis) {
+        switch (axis) {
+            case 0: return stars.x[i];
+            case 1: return stars.y[i];
+            default: return stars.z[i];
+        }
+    }
+
+    /**
+     * @return the squared distance from a point to a node's bounding box, or
+     *      0 if the point is inside it
+     */
+    private float boxDistanceSq(int node, float x, float y, float z) {
+        float dx = Math.max(0, Math.max(minX[node] - x, x - maxX[node]));
+        float dy = Math.max(0, Math.max(minY[node] - y, y - maxY[node]));
+        float dz = Math.max(0, Math.max(minZ[node] - z, z - maxZ[node]));
+        return dx*dx + dy*dy + dz*dz;
+    }
+
+    /**
+     * @return the squared distance from a point to the closest point of a
+     *      ray, which is its origin for points behind it
+     */
+    private static float rayDistanceSq(float ox, float oy, float oz,
+            float dx, float dy, float dz, float x, float y, float z) {
+        float px = x - ox, py = y - oy, pz = z - oz;
+        float t = Math.max(0, px*dx + py*dy + pz*dz);
+        px -= t*dx;
+        py -= t*dy;
+        pz -= t*dz;
+        return px*px + py*py + pz*pz;
+    }
+
+    /**
+     * A growing list of star indices.
+     */
+    private static class Results {
+        private int[] items = new int[64];
+        private int count = 0;
+
+        void add(int i) {
+            if (count == items.length) items = Arrays.copyOf(items, count*2);
+            items[count++] = i;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, count);
+        }
+    }
+}
@@ -2,6 +2,9 @@ package EVERender;
  
 import com.jme3.input.ChaseCamera;
 import com.jme3.input.InputManager;
+import com.jme3.math.Ray;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.scene.Spatial;
 
@@ -39,4 +42,17 @@ class LogChaseCamera extends ChaseCamera {
     public Camera getCamera() {
         return cam;
     }
+    
+    /**
+     * Casts a ray from the camera through a point on the screen, such as the
+     * cursor.
+     * 
+     * @param screen the point, in pixels from the bottom left corner
+     * @return the ray in world space, with a normalized direction
+     */
+    public Ray getPickRay(Vector2f screen) {
+        Vector3f near = cam.getWorldCoordinates(screen, 0f);
+        Vector3f far = cam.getWorldCoordinates(screen, 1f);
+        return new Ray(near, far.subtract(near).normalize());
+    }
 }
@@ -0,0 +1,41 @@
+package EVERender;
+
+/**
+ * Whatever draws a Galaxy. The Galaxy hands its meshes to the view once when
+ * attached, then tells it after every update. EveRender implements it with
+ * jME's scene graph; without a view, a Galaxy runs headless.
+ */
+public interface MapView {
+    /**
+     * Draws every star of the map.
+     * 
+     * @param field a point mesh with one point per star
+     */
+    public void showStars(StarField field);
+
+    /**
+     * Draws every jumpgate of the map. The lines' intensities are updated in
+     * place as activity changes.
+     * 
+     * @param lines a line mesh with one line per gate
+     */
+    public void showGates(GateLines lines);
+
+    /**
+     * Draws the kill and jump effects. The pools' meshes are updated in place
+     * every frame.
+     * 
+     * @param flashes the kill effects
+     * @param movers the jump effects
+     */
+    public void showEffects(ParticlePool flashes, ParticlePool movers);
+
+    /**
+     * Called on the render thread by Galaxy.present(), once the pools' meshes
+     * hold the latest effects.
+     * 
+     * @param flashes the kill effects
+     * @param movers the jump effects
+     */
+    public void effectsUpdated(ParticlePool flashes, ParticlePool movers);
+}
@@ -0,0 +1,82 @@
+package EVERender;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.texture.Texture;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out shared textures and point sprite materials, so that every sprite
+ * of one kind is drawn with the same Material instance and the renderer
+ * doesn't switch state between them. A sprite's color and size live in its
+ * mesh's vertex buffers, never in the material, so a shared material must
+ * not be modified by the Geometries using it.
+ *
+ * Render thread only.
+ */
+public class MaterialCache {
+    private final AssetManager assetManager;
+
+    // textures by asset path
+    private final Map<String, Texture> textures = new HashMap<String, Texture>();
+
+    // sprite materials by texture and blend mode
+    private final Map<String, Material> sprites = new HashMap<String, Material>();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param assetManager the asset manager to load from
+     */
+    public MaterialCache(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    /**
+     * Returns a texture, loading it on the first request.
+     *
+     * @param path the texture's asset path
+     * @return the shared texture
+     */
+    public Texture getTexture(String path) {
+        Texture texture = textures.get(path);
+        if (texture == null) {
+            texture = assetManager.loadTexture(path);
+            textures.put(path, texture);
+        }
+        return texture;
+    }
+
+    /**
+     * Returns the unshaded point sprite material for a texture and blend
+     * mode, creating it on the first request. Depth testing is off.
+     *
+     * @param texture the sprite's texture
+     * @param blend how the sprite is blended into the scene
+     * @return the shared material
+     */
+    public Material getSprite(String texture, RenderState.BlendMode blend) {
+        String key = texture + "|" + blend;
+
+        Material spriteMat = sprites.get(key);
+        if (spriteMat == null) {
+            spriteMat = new Material(assetManager, "Common/MatDefs/Misc/Particle.j3md");
+            spriteMat.setTexture("Texture", getTexture(texture));
+            spriteMat.setFloat("Quadratic", 20f);
+            spriteMat.setBoolean("PointSprite", true);
+            spriteMat.getAdditionalRenderState().setBlendMode(blend);
+            spriteMat.getAdditionalRenderState().setDepthTest(false);
+            sprites.put(key, spriteMat);
+        }
+        return spriteMat;
+    }
+
+    /**
+     * @return the number of distinct sprite materials created so far
+     */
+    public int getMaterialCount() {
+        return sprites.size();
+    }
+}
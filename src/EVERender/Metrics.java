@@ -0,0 +1,286 @@
+package EVERender;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Instrumentation of the map: how long each phase of a frame takes, how many
+ * effects are alive, how many are spawned and retired each second, and how
+ * long the API takes to answer. Everything is counted in fixed-size
+ * Histograms, so recording never allocates. Frames and effects are counted
+ * in windows of WINDOW seconds, and reported over the current window and
+ * the one before, so that they follow what the map is doing now rather
+ * than averaging over its whole run.
+ *
+ * Phases are recorded on the render thread and fetches on the scraper's
+ * thread. The metrics can be read from any thread, over JMX or with
+ * describe().
+ */
+public class Metrics implements MetricsMXBean {
+    /**
+     * The timed phases of a frame. CAMERA, SKYBOX and ROTATION are timed by
+     * EveRender, ACTIVITY, EFFECTS and SPAWN by Galaxy.simulate(), which may
+     * run on a simulation thread, and PRESENT by Galaxy.present(). UPDATE is
+     * the whole of EveRender.simpleUpdate(), and INTERVAL the time between
+     * frames, rendering included.
+     */
+    public enum Phase {
+        CAMERA, SKYBOX, ROTATION, ACTIVITY, EFFECTS, SPAWN, PRESENT, UPDATE,
+        INTERVAL
+    }
+
+    public static final String NAME = "EVERender:type=Metrics";
+
+    // seconds per window of frame and effect histograms
+    private static final long WINDOW = 60;
+
+    private final Window[] phases = new Window[Phase.values().length];
+    private final Window live = new Window();
+    private final Window spawnRate = new Window();
+    private final Window retireRate = new Window();
+    private final Histogram fetchLatency = new Histogram();
+
+    private volatile int liveNow = 0;
+    private volatile long spawned = 0, retired = 0, dropped = 0, heated = 0;
+    private volatile long fetchFailures = 0;
+
+    // simulated time and totals at the start of the current second
+    private float second = 0;
+    private long secondSpawned = 0, secondRetired = 0;
+
+    /**
+     * Creates a Metrics with nothing counted.
+     */
+    public Metrics() {
+        for (int i = 0; i < phases.length; ++i) {
+            phases[i] = new Window();
+        }
+    }
+
+    /**
+     * Registers this instance with the platform MBean server as NAME. A
+     * failure is reported and otherwise ignored.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    this, new ObjectName(NAME));
+        } catch (JMException ex) {
+            System.err.println("Couldn't register " + NAME + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Counts the duration of a phase of the current frame.
+     *
+     * @param phase the phase
+     * @param nanos how long it took, in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Counts the state of the effects at the end of a frame. Spawn and
+     * retire rates are counted once per simulated second. Kills and jumps
+     * drawn as heat count as spawned, but never live or retire.
+     *
+     * @param tpf the frame's delta-time in seconds
+     * @param liveCount effects alive
+     * @param spawnedTotal kills and jumps so far
+     * @param droppedTotal effects dropped from full pools so far
+     * @param heatedTotal kills and jumps drawn as heat so far
+     * @param retiredTotal effects freed after expiring so far
+     */
+    public void recordEffects(float tpf, int liveCount, long spawnedTotal,
+            long droppedTotal, long heatedTotal, long retiredTotal) {
+        live.record(liveCount);
+        liveNow = liveCount;
+
+        spawned = spawnedTotal;
+        dropped = droppedTotal;
+        heated = heatedTotal;
+        retired = retiredTotal;
+
+        second += tpf;
+        if (second >= 1) {
+            spawnRate.record(Math.round((spawned - secondSpawned)/second));
+            retireRate.record(Math.round((retired - secondRetired)/second));
+            secondSpawned = spawned;
+            secondRetired = retired;
+            second = 0;
+        }
+    }
+
+    /**
+     * Counts an API fetch.
+     *
+     * @param millis how long the fetch took, in milliseconds
+     * @param succeeded whether the page was read
+     */
+    public void recordFetch(long millis, boolean succeeded) {
+        fetchLatency.record(millis);
+        if (!succeeded) ++fetchFailures;
+    }
+
+    /**
+     * @param phase a phase of the frame
+     * @return its durations in nanoseconds, over the last one to two windows
+     */
+    public Histogram.Summary getPhase(Phase phase) {
+        return phases[phase.ordinal()].getSummary();
+    }
+
+    @Override public Histogram.Summary getCameraTime() {
+        return getPhase(Phase.CAMERA);
+    }
+
+    @Override public Histogram.Summary getSkyboxTime() {
+        return getPhase(Phase.SKYBOX);
+    }
+
+    @Override public Histogram.Summary getRotationTime() {
+        return getPhase(Phase.ROTATION);
+    }
+
+    @Override public Histogram.Summary getActivityTime() {
+        return getPhase(Phase.ACTIVITY);
+    }
+
+    @Override public Histogram.Summary getEffectsTime() {
+        return getPhase(Phase.EFFECTS);
+    }
+
+    @Override public Histogram.Summary getSpawnTime() {
+        return getPhase(Phase.SPAWN);
+    }
+
+    @Override public Histogram.Summary getPresentTime() {
+        return getPhase(Phase.PRESENT);
+    }
+
+    @Override public Histogram.Summary getUpdateTime() {
+        return getPhase(Phase.UPDATE);
+    }
+
+    @Override public Histogram.Summary getFrameInterval() {
+        return getPhase(Phase.INTERVAL);
+    }
+
+    @Override public Histogram.Summary getLiveParticles() {
+        return live.getSummary();
+    }
+
+    @Override public Histogram.Summary getSpawnRate() {
+        return spawnRate.getSummary();
+    }
+
+    @Override public Histogram.Summary getRetireRate() {
+        return retireRate.getSummary();
+    }
+
+    @Override public Histogram.Summary getFetchLatency() {
+        return fetchLatency.getSummary();
+    }
+
+    @Override public long getSpawned() {
+        return spawned;
+    }
+
+    @Override public long getRetired() {
+        return retired;
+    }
+
+    @Override public long getDropped() {
+        return dropped;
+    }
+
+    @Override public long getHeated() {
+        return heated;
+    }
+
+    @Override public long getFetchFailures() {
+        return fetchFailures;
+    }
+
+    @Override public void reset() {
+        for (Window phase : phases) phase.reset();
+        live.reset();
+        spawnRate.reset();
+        retireRate.reset();
+        fetchLatency.reset();
+    }
+
+    /**
+     * Describes the metrics in a few lines of text, for the overlay and the
+     * headless runner.
+     *
+     * @return the description
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-9s %8s %8s %8s%n", "us", "p50", "p99", "max"));
+        for (Phase phase : Phase.values()) {
+            Histogram.Summary s = getPhase(phase);
+            text.append(String.format("%-9s %8.1f %8.1f %8.1f%n",
+                    phase.name().toLowerCase(),
+                    s.getP50()/1e3, s.getP99()/1e3, s.getMax()/1e3));
+        }
+
+        Histogram.Summary l = live.getSummary();
+        Histogram.Summary sr = spawnRate.getSummary();
+        Histogram.Summary rr = retireRate.getSummary();
+        Histogram.Summary f = fetchLatency.getSummary();
+        text.append(String.format("live %d (p99 %d), dropped %d, heated %d%n",
+                liveNow, l.getP99(), dropped, heated));
+        text.append(String.format("spawned %d/s, retired %d/s (p50)%n",
+                sr.getP50(), rr.getP50()));
+        text.append(String.format("fetch p50 %d ms, max %d ms, %d failed",
+                f.getP50(), f.getMax(), fetchFailures));
+
+        return text.toString();
+    }
+
+    /**
+     * A histogram over windows of WINDOW seconds of wall time. Values are
+     * counted into the current window, and summaries cover it and the last
+     * whole one, so they never start from nothing when a window ends.
+     */
+    private static class Window {
+        private volatile Histogram current = new Histogram();
+        private Histogram previous = new Histogram();
+        private final Histogram both = new Histogram();
+        private volatile long started = System.nanoTime();
+
+        void record(long value) {
+            if (System.nanoTime() - started >= WINDOW*1000000000L) roll();
+            current.record(value);
+        }
+
+        synchronized Histogram.Summary getSummary() {
+            both.reset();
+            both.add(previous);
+            both.add(current);
+            return both.getSummary();
+        }
+
+        synchronized void reset() {
+            current.reset();
+            previous.reset();
+            started = System.nanoTime();
+        }
+
+        private synchronized void roll() {
+            // another thread may have rolled it first
+            long now = System.nanoTime();
+            if (now - started < WINDOW*1000000000L) return;
+
+            Histogram next = previous;
+            next.reset();
+            previous = current;
+            current = next;
+            started = now;
+        }
+    }
+}
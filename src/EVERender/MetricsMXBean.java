@@ -0,0 +1,36 @@
+package EVERender;
+
+/**
+ * The management interface of Metrics, registered with the platform MBean
+ * server as EVERender:type=Metrics. Times are in nanoseconds and fetch
+ * latency in milliseconds. The histograms of frames and effects count the
+ * last one to two minutes, and fetch latency counts from the start; all
+ * count from the last reset() at most.
+ */
+public interface MetricsMXBean {
+    public Histogram.Summary getCameraTime();
+    public Histogram.Summary getSkyboxTime();
+    public Histogram.Summary getRotationTime();
+    public Histogram.Summary getActivityTime();
+    public Histogram.Summary getEffectsTime();
+    public Histogram.Summary getSpawnTime();
+    public Histogram.Summary getPresentTime();
+    public Histogram.Summary getUpdateTime();
+    public Histogram.Summary getFrameInterval();
+
+    public Histogram.Summary getLiveParticles();
+    public Histogram.Summary getSpawnRate();
+    public Histogram.Summary getRetireRate();
+    public Histogram.Summary getFetchLatency();
+
+    public long getSpawned();
+    public long getRetired();
+    public long getDropped();
+    public long getHeated();
+    public long getFetchFailures();
+
+    /**
+     * Forgets every value counted so far. Totals are kept.
+     */
+    public void reset();
+}
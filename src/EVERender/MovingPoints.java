@@ -0,0 +1,47 @@
+package EVERender;
+
+import com.jme3.math.FastMath;
+
+/**
+ * Points travelling along jumpgates in the galaxy map. Represent player
+ * jumps.
+ */
+public class MovingPoints extends ParticlePool {
+    // speed in units/second
+    private static final float SPEED = 1/50f;
+    
+    /**
+     * Creates an empty set of MovingPoints.
+     * @param capacity the maximum number of points alive at once
+     * @param shaderDriven whether points are animated by the Effect material
+     */
+    public MovingPoints (int capacity, boolean shaderDriven) {
+        super(capacity, false, shaderDriven);
+    }
+    
+    /**
+     * Creates a point travelling from one star to another at a constant
+     * speed. Drops the oldest point if the pool is full.
+     * 
+     * @param stars the catalog of stars
+     * @param origin the index of the star at which to create the point
+     * @param dest the index of the star towards which to travel
+     */
+    public void spawn(StarCatalog stars, int origin, int dest) {
+        emit(stars.x[origin], stars.y[origin], stars.z[origin],
+                stars.x[dest], stars.y[dest], stars.z[dest],
+                stars.r[origin], stars.g[origin], stars.b[origin],
+                FastMath.nextRandomFloat()*.1f + .1f,
+                lifetime(stars, origin, dest));
+    }
+    
+    /**
+     * @param stars the catalog of stars
+     * @param origin the index of the star a point starts at
+     * @param dest the index of the star it travels to
+     * @return the seconds the point takes to arrive
+     */
+    static float lifetime(StarCatalog stars, int origin, int dest) {
+        return Math.max(stars.distance(origin, dest)/SPEED, FastMath.FLT_EPSILON);
+    }
+}
@@ -0,0 +1,780 @@
+package EVERender;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fixed-capacity set of short-lived point sprites drawn from a single
+ * dynamic Points mesh. Particle state is kept in primitive arrays indexed by
+ * slot, so spawning a particle never allocates objects or touches the scene
+ * graph.
+ *
+ * Every particle travels in a straight line from an origin to a destination
+ * over its lifetime, optionally fading out as it goes. Particles can either
+ * be moved on the CPU, rewriting the mesh every frame, or be shader-driven:
+ * each particle is then written to the mesh once when spawned, and the
+ * Effect material computes its position and fade from a time uniform, so
+ * the CPU only retires expired slots.
+ *
+ * Live particles form a ring in spawn order, from which every update
+ * removes the expired ones, however long each lives. In CPU-driven pools the
+ * ring holds the particles themselves, compacted in place; in shader-driven
+ * pools, whose slots must stay put in the mesh, it holds slot numbers, and
+ * expired slots go back on a stack of free ones. When the pool is full,
+ * spawning a new particle drops the oldest live one.
+ *
+ * By default the pool is updated on the render thread and writes straight
+ * into its mesh. With enableHandoff(), it can instead be updated on a
+ * simulation thread: each update then writes a whole frame of vertex data
+ * and publishes it through a TripleBuffer, and the render thread calls
+ * present() to point the mesh at the latest frame, without locking or
+ * copying.
+ *
+ * With enableParallel(), updates of pools with many live particles are split
+ * into chunks run on a ForkJoinPool: survivors are counted per chunk, then
+ * each chunk moves its survivors into spare arrays at its offset and writes
+ * their vertices, so compaction stays stable and needs no locking.
+ */
+public class ParticlePool {
+    // pool time is rebased to zero after this many seconds to keep precision
+    private static final float REBASE_TIME = 1024f;
+
+    // longest a handed-off frame's time is extrapolated, in seconds
+    private static final float MAX_EXTRAPOLATION = 0.25f;
+
+    // fewest particles or slots worth a chunk of a parallel update
+    private static final int MIN_CHUNK = 1024;
+
+    // chunks per thread of a parallel update, to even out the load
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    protected final int capacity;
+    private final boolean fade;
+    private final boolean shaderDriven;
+
+    // ring of live particles: head is the oldest, count the number alive
+    private int head = 0;
+    private int count = 0;
+
+    // particles dropped while alive, and freed once expired
+    private int dropped = 0;
+    private long retired = 0;
+
+    // shader-driven pools: the slot of each particle in the ring, and a
+    // stack of the slots not in it
+    private int[] order;
+    private int[] free;
+    private int freeCount = 0;
+
+    // most particles alive at once, up to capacity; set from any thread
+    private volatile int limit;
+
+    // seconds since the last rebase
+    private float time = 0;
+
+    // particle state by slot; swapped with the spare arrays by parallel
+    // updates
+    private float[] ox, oy, oz;
+    private float[] dx, dy, dz;
+    private float[] r, g, b;
+    private float[] size;
+    private float[] born, life;
+
+    // parallel updates: the pool to run on and the live count from which it
+    // is used, or null and unused
+    private ForkJoinPool forkJoin = null;
+    private int parallelThreshold = Integer.MAX_VALUE;
+    private Chunk[] chunks;
+    private Pass pass;
+
+    // spare particle arrays, written by parallel compaction
+    private float[] sox, soy, soz;
+    private float[] sdx, sdy, sdz;
+    private float[] sr, sg, sb;
+    private float[] ssize;
+    private float[] sborn, slife;
+
+    // the frame written by update() when not handing off, which the mesh
+    // then always draws
+    private final Frame frame;
+    private final Mesh mesh;
+
+    // frames passed from update() to present(), or null if not handing off
+    private TripleBuffer<Frame> handoff = null;
+
+    // incremented whenever a shader-driven slot changes
+    private int version = 0;
+
+    // version of the shader-driven frame last uploaded to the mesh
+    private int meshVersion;
+
+    /**
+     * Creates an empty ParticlePool and its mesh.
+     *
+     * @param capacity the maximum number of live particles
+     * @param fade whether particles dim to black over their lifetime
+     * @param shaderDriven whether particles are animated by the Effect
+     *      material instead of on the CPU
+     */
+    public ParticlePool(int capacity, boolean fade, boolean shaderDriven) {
+        this.capacity = capacity;
+        this.limit = capacity;
+        this.fade = fade;
+        this.shaderDriven = shaderDriven;
+
+        ox = new float[capacity];
+        oy = new float[capacity];
+        oz = new float[capacity];
+        dx = new float[capacity];
+        dy = new float[capacity];
+        dz = new float[capacity];
+        r = new float[capacity];
+        g = new float[capacity];
+        b = new float[capacity];
+        size = new float[capacity];
+        born = new float[capacity];
+        life = new float[capacity];
+
+        // unused slots are already expired: born a second before time 0
+        for (int i = 0; i < capacity; ++i) {
+            born[i] = -1f;
+            life[i] = 1f;
+        }
+
+        if (shaderDriven) {
+            order = new int[capacity];
+            free = new int[capacity];
+            while (freeCount < capacity) {
+                free[freeCount] = capacity - 1 - freeCount;
+                ++freeCount;
+            }
+        }
+
+        frame = new Frame();
+        meshVersion = frame.version;
+
+        mesh = new Mesh();
+        mesh.setMode(Mesh.Mode.Points);
+
+        if (shaderDriven) {
+            mesh.setBuffer(VertexBuffer.Type.Position, 3, frame.positions);
+            mesh.setBuffer(VertexBuffer.Type.Normal, 3, frame.destinations);
+            mesh.setBuffer(VertexBuffer.Type.Color, 3, frame.colors);
+            mesh.setBuffer(VertexBuffer.Type.Size, 1, frame.sizes);
+            mesh.setBuffer(VertexBuffer.Type.TexCoord2, 2, frame.times);
+        } else {
+            FloatBuffer texCoords = BufferUtils.createFloatBuffer(capacity*4);
+            for (int i = 0; i < capacity; ++i) {
+                texCoords.put(0f).put(0f).put(1f).put(1f);
+            }
+            texCoords.flip();
+
+            mesh.setBuffer(VertexBuffer.Type.Position, 3, frame.positions);
+            mesh.setBuffer(VertexBuffer.Type.Color, 3, frame.colors);
+            mesh.setBuffer(VertexBuffer.Type.Size, 1, frame.sizes);
+            mesh.setBuffer(VertexBuffer.Type.TexCoord, 4, texCoords);
+            mesh.getBuffer(VertexBuffer.Type.Position).setUsage(VertexBuffer.Usage.Stream);
+            mesh.getBuffer(VertexBuffer.Type.Color).setUsage(VertexBuffer.Usage.Stream);
+            mesh.getBuffer(VertexBuffer.Type.Size).setUsage(VertexBuffer.Usage.Stream);
+
+            writeLive(frame);
+            upload(frame);
+        }
+    }
+
+    /**
+     * Makes update() hand its frames to present() instead of writing into
+     * the mesh, so that the pool can be updated on another thread than the
+     * one rendering it. Must be called before the pool is first updated.
+     */
+    public void enableHandoff() {
+        handoff = new TripleBuffer<Frame>(frame, new Frame(), new Frame());
+    }
+
+    /**
+     * Makes update() run on a ForkJoinPool whenever at least threshold
+     * particles are alive. Below the threshold, updates stay on the calling
+     * thread. Must be called before the pool is first updated.
+     *
+     * @param forkJoin the pool to run on, which may be shared
+     * @param threshold the number of live particles from which to update in
+     *      parallel
+     */
+    public void enableParallel(ForkJoinPool forkJoin, int threshold) {
+        this.forkJoin = forkJoin;
+        this.parallelThreshold = Math.max(threshold, 1);
+
+        int chunkCount = Math.max(1, forkJoin.getParallelism()*CHUNKS_PER_THREAD);
+        chunks = new Chunk[chunkCount];
+        for (int i = 0; i < chunkCount; ++i) chunks[i] = new Chunk(i);
+        pass = new Pass();
+
+        if (!shaderDriven) {
+            sox = new float[capacity]; soy = new float[capacity]; soz = new float[capacity];
+            sdx = new float[capacity]; sdy = new float[capacity]; sdz = new float[capacity];
+            sr = new float[capacity]; sg = new float[capacity]; sb = new float[capacity];
+            ssize = new float[capacity];
+            sborn = new float[capacity];
+            slife = new float[capacity];
+        }
+    }
+
+    /**
+     * @return whether the pool hands its frames to present()
+     */
+    public boolean isHandingOff() {
+        return handoff != null;
+    }
+
+    /**
+     * Spawns a particle, dropping the oldest particles if the pool is full
+     * or at its limit.
+     *
+     * @param x the particle's origin
+     * @param y the particle's origin
+     * @param z the particle's origin
+     * @param destX the position reached at the end of the particle's life
+     * @param destY the position reached at the end of the particle's life
+     * @param destZ the position reached at the end of the particle's life
+     * @param red the particle's color
+     * @param green the particle's color
+     * @param blue the particle's color
+     * @param radius the particle's radius
+     * @param lifetime the particle's lifetime in seconds
+     */
+    protected void emit(float x, float y, float z,
+            float destX, float destY, float destZ,
+            float red, float green, float blue,
+            float radius, float lifetime) {
+        while (count > 0 && count >= limit) {
+            int slot = shaderDriven ? order[head] : head;
+            if (time - born[slot] >= life[slot]) {
+                ++retired;
+            } else {
+                ++dropped;
+            }
+
+            // the dropped slot may not be reused at once, so the shader must
+            // see it as expired
+            if (shaderDriven) {
+                born[slot] = time - 1f;
+                life[slot] = 1f;
+                if (handoff == null) writeSlot(frame, slot);
+                free[freeCount++] = slot;
+            }
+
+            head = (head + 1) % capacity;
+            --count;
+        }
+
+        int i = (head + count) % capacity;
+        ++count;
+        if (shaderDriven) {
+            int slot = free[--freeCount];
+            order[i] = slot;
+            i = slot;
+        }
+
+        ox[i] = x; oy[i] = y; oz[i] = z;
+        dx[i] = destX; dy[i] = destY; dz[i] = destZ;
+        r[i] = red; g[i] = green; b[i] = blue;
+        size[i] = radius;
+        born[i] = time;
+        life[i] = lifetime;
+
+        if (shaderDriven) {
+            if (handoff == null) writeSlot(frame, i);
+            ++version;
+        }
+    }
+
+    /**
+     * Advances the pool by tpf seconds and frees the slots of expired
+     * particles. CPU-driven pools also move their particles and rewrite the
+     * mesh; shader-driven pools only upload slots spawned since the last
+     * update.
+     *
+     * When handing off, the vertex data is written to a frame and published
+     * for present() instead. Shader-driven pools then rewrite every slot of
+     * the frame if any changed since that frame was last written.
+     *
+     * @param tpf delta-time in seconds
+     */
+    public void update(float tpf) {
+        time += tpf;
+        if (time > REBASE_TIME) rebase();
+
+        boolean parallel = count >= parallelThreshold;
+
+        if (shaderDriven) {
+            retireSlots();
+        } else if (!parallel) {
+            compact();
+        }
+
+        if (handoff == null) {
+            // shader-driven slots were written as they were spawned
+            if (shaderDriven) {
+                frame.version = version;
+            } else if (parallel) {
+                compactParallel(frame);
+            } else {
+                writeLive(frame);
+            }
+            frame.time = time;
+            upload(frame);
+        } else {
+            Frame back = handoff.getBack();
+            if (!shaderDriven) {
+                if (parallel) {
+                    compactParallel(back);
+                } else {
+                    writeLive(back);
+                }
+            } else if (back.version != version) {
+                if (parallel) {
+                    pass.run(Pass.WRITE_SLOTS, back, capacity);
+                } else {
+                    for (int i = 0; i < capacity; ++i) writeSlot(back, i);
+                }
+                back.version = version;
+            }
+            back.time = time;
+            back.published = System.nanoTime();
+            handoff.publish();
+        }
+    }
+
+    /**
+     * Render thread method of pools handing off. Points the mesh at the
+     * latest frame published by update(), if there is a new one.
+     */
+    public void present() {
+        if (handoff != null && handoff.acquire()) upload(handoff.getFront());
+    }
+
+    /**
+     * Points the mesh's buffers at a frame's and marks them for upload.
+     * Shader-driven frames are only uploaded if their slots changed.
+     */
+    private void upload(Frame f) {
+        if (shaderDriven) {
+            if (f.version == meshVersion) return;
+
+            mesh.getBuffer(VertexBuffer.Type.Position).updateData(f.positions);
+            mesh.getBuffer(VertexBuffer.Type.Normal).updateData(f.destinations);
+            mesh.getBuffer(VertexBuffer.Type.Color).updateData(f.colors);
+            mesh.getBuffer(VertexBuffer.Type.Size).updateData(f.sizes);
+            mesh.getBuffer(VertexBuffer.Type.TexCoord2).updateData(f.times);
+            meshVersion = f.version;
+        } else {
+            mesh.getBuffer(VertexBuffer.Type.Position).updateData(f.positions);
+            mesh.getBuffer(VertexBuffer.Type.Color).updateData(f.colors);
+            mesh.getBuffer(VertexBuffer.Type.Size).updateData(f.sizes);
+            mesh.updateCounts();
+        }
+    }
+
+    /**
+     * Removes the slots of expired particles from the ring of a
+     * shader-driven pool and frees them, keeping the survivors in spawn
+     * order. An expired slot needs no rewrite, since the shader already
+     * hides it.
+     */
+    private void retireSlots() {
+        int live = 0;
+
+        for (int k = 0; k < count; ++k) {
+            int slot = order[(head + k) % capacity];
+            if (time - born[slot] >= life[slot]) {
+                free[freeCount++] = slot;
+            } else {
+                order[(head + live) % capacity] = slot;
+                ++live;
+            }
+        }
+
+        retired += count - live;
+        count = live;
+    }
+
+    /**
+     * Removes expired particles from the ring, keeping the survivors in
+     * spawn order.
+     */
+    private void compact() {
+        int live = 0;
+
+        for (int k = 0; k < count; ++k) {
+            int from = (head + k) % capacity;
+            if (time - born[from] >= life[from]) continue;
+
+            int to = (head + live) % capacity;
+            if (to != from) {
+                ox[to] = ox[from]; oy[to] = oy[from]; oz[to] = oz[from];
+                dx[to] = dx[from]; dy[to] = dy[from]; dz[to] = dz[from];
+                r[to] = r[from]; g[to] = g[from]; b[to] = b[from];
+                size[to] = size[from];
+                born[to] = born[from];
+                life[to] = life[from];
+            }
+            ++live;
+        }
+
+        retired += count - live;
+        count = live;
+    }
+
+    /**
+     * Parallel compact() and writeLive() of CPU-driven pools. Survivors are
+     * moved into the spare arrays from slot 0, which then replace the
+     * particle arrays.
+     *
+     * @param f the frame to write
+     */
+    private void compactParallel(Frame f) {
+        pass.run(Pass.COUNT, f, count);
+
+        // each chunk's survivors start after those of the chunks before it
+        int live = 0;
+        for (int c = 0; c < pass.chunkCount; ++c) {
+            int survivors = chunks[c].live;
+            chunks[c].start = live;
+            live += survivors;
+        }
+
+        f.positions.clear().limit(live*3);
+        f.colors.clear().limit(live*3);
+        f.sizes.clear().limit(live);
+
+        pass.run(Pass.MOVE, f, count);
+
+        float[] t;
+        t = ox; ox = sox; sox = t;
+        t = oy; oy = soy; soy = t;
+        t = oz; oz = soz; soz = t;
+        t = dx; dx = sdx; sdx = t;
+        t = dy; dy = sdy; sdy = t;
+        t = dz; dz = sdz; sdz = t;
+        t = r; r = sr; sr = t;
+        t = g; g = sg; sg = t;
+        t = b; b = sb; sb = t;
+        t = size; size = ssize; ssize = t;
+        t = born; born = sborn; sborn = t;
+        t = life; life = slife; slife = t;
+
+        head = 0;
+        retired += count - live;
+        count = live;
+    }
+
+    /**
+     * Writes the current position and color of every live particle into a
+     * frame's buffers, oldest first. Used by CPU-driven pools.
+     *
+     * @param f the frame to write
+     */
+    private void writeLive(Frame f) {
+        FloatBuffer positions = f.positions;
+        FloatBuffer colors = f.colors;
+        FloatBuffer sizes = f.sizes;
+
+        positions.clear();
+        colors.clear();
+        sizes.clear();
+
+        for (int k = 0; k < count; ++k) {
+            int i = (head + k) % capacity;
+            float t = (time - born[i]) / life[i];
+            float light = fade ? 1 - t : 1;
+
+            positions.put(ox[i] + (dx[i] - ox[i])*t)
+                    .put(oy[i] + (dy[i] - oy[i])*t)
+                    .put(oz[i] + (dz[i] - oz[i])*t);
+            colors.put(r[i]*light).put(g[i]*light).put(b[i]*light);
+            sizes.put(size[i]);
+        }
+
+        positions.flip();
+        colors.flip();
+        sizes.flip();
+    }
+
+    /**
+     * Writes the current position and color of the particle in slot i as
+     * vertex v of a frame, without moving the buffers' positions, so that
+     * chunks can write at once.
+     */
+    private void writeVertex(Frame f, int v, int i) {
+        float t = (time - born[i]) / life[i];
+        float light = fade ? 1 - t : 1;
+
+        f.positions.put(v*3, ox[i] + (dx[i] - ox[i])*t)
+                .put(v*3 + 1, oy[i] + (dy[i] - oy[i])*t)
+                .put(v*3 + 2, oz[i] + (dz[i] - oz[i])*t);
+        f.colors.put(v*3, r[i]*light).put(v*3 + 1, g[i]*light).put(v*3 + 2, b[i]*light);
+        f.sizes.put(v, size[i]);
+    }
+
+    /**
+     * Writes a single slot into a frame's buffers. Used by shader-driven
+     * pools, whose mesh always holds every slot.
+     *
+     * @param f the frame to write
+     * @param i the slot to write
+     */
+    private void writeSlot(Frame f, int i) {
+        f.positions.put(i*3, ox[i]).put(i*3 + 1, oy[i]).put(i*3 + 2, oz[i]);
+        f.destinations.put(i*3, dx[i]).put(i*3 + 1, dy[i]).put(i*3 + 2, dz[i]);
+        f.colors.put(i*3, r[i]).put(i*3 + 1, g[i]).put(i*3 + 2, b[i]);
+        f.sizes.put(i, size[i]);
+        f.times.put(i*2, born[i]).put(i*2 + 1, life[i]);
+    }
+
+    /**
+     * Shifts pool time and every slot's spawn time back to zero, so that
+     * float precision doesn't degrade when running for hours.
+     */
+    private void rebase() {
+        for (int i = 0; i < capacity; ++i) {
+            born[i] -= time;
+            if (shaderDriven && handoff == null) frame.times.put(i*2, born[i]);
+        }
+
+        time = 0;
+        if (shaderDriven) ++version;
+    }
+
+    /**
+     * @return the number of live particles
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the most particles the pool can hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Limits the particles alive at once to fewer than the pool's capacity,
+     * such as to lighten rendering. Particles over a lowered limit are
+     * dropped, oldest first, as new ones are spawned. May be called from any
+     * thread.
+     *
+     * @param limit from 1 to the pool's capacity
+     */
+    public void setLimit(int limit) {
+        this.limit = Math.max(1, Math.min(limit, capacity));
+    }
+
+    /**
+     * @return the most particles alive at once
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of live particles dropped because the pool was full
+     */
+    public int getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the number of particles whose slots were freed after they
+     *      expired
+     */
+    public long getRetired() {
+        return retired;
+    }
+
+    /**
+     * @return whether particles fade out over their lifetime
+     */
+    public boolean isFading() {
+        return fade;
+    }
+
+    /**
+     * @return whether this pool is animated by the Effect material
+     */
+    public boolean isShaderDriven() {
+        return shaderDriven;
+    }
+
+    /**
+     * Returns the pool's clock. Only meaningful on the thread updating the
+     * pool; the render thread should use getFrameTime().
+     *
+     * @return seconds since the pool's clock was last rebased
+     */
+    public float getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the time of the frame drawn by the mesh, for the Effect
+     * material's Time parameter. When handing off, this is extrapolated from
+     * when the frame was published, so that shader-driven particles move
+     * smoothly between simulation ticks.
+     *
+     * @return the pool time to render the mesh at
+     */
+    public float getFrameTime() {
+        if (handoff == null) return frame.time;
+
+        Frame front = handoff.getFront();
+        if (front.published == 0) return front.time;
+
+        float since = (System.nanoTime() - front.published)/1e9f;
+        return front.time + Math.min(since, MAX_EXTRAPOLATION);
+    }
+
+    /**
+     * @return the Points mesh drawing this pool's particles
+     */
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * The vertex data of one update: the buffers of every live particle for
+     * CPU-driven pools, or of every slot for shader-driven pools.
+     */
+    private class Frame {
+        final FloatBuffer positions;
+        final FloatBuffer colors;
+        final FloatBuffer sizes;
+        final FloatBuffer destinations;
+        final FloatBuffer times;
+
+        // pool time and slot version the frame was written at
+        float time = 0;
+        int version = 0;
+
+        // System.nanoTime() when published, or 0 if never
+        long published = 0;
+
+        Frame() {
+            positions = BufferUtils.createFloatBuffer(capacity*3);
+            colors = BufferUtils.createFloatBuffer(capacity*3);
+            sizes = BufferUtils.createFloatBuffer(capacity);
+
+            if (shaderDriven) {
+                destinations = BufferUtils.createFloatBuffer(capacity*3);
+                times = BufferUtils.createFloatBuffer(capacity*2);
+                for (int i = 0; i < capacity; ++i) {
+                    times.put(born[i]).put(life[i]);
+                }
+                times.clear();
+            } else {
+                destinations = null;
+                times = null;
+            }
+        }
+    }
+
+    /**
+     * Runs one pass of a parallel update over every chunk, on forkJoin. Kept
+     * and reinitialized between updates, like the chunks, so that parallel
+     * updates don't allocate.
+     */
+    private class Pass extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        static final int COUNT = 0, MOVE = 1, WRITE_SLOTS = 2;
+
+        int mode;
+        Frame target;
+        int length;
+        int chunkCount;
+
+        /**
+         * Splits length particles (or slots) into chunks and runs mode on
+         * each, returning once all are done.
+         */
+        void run(int mode, Frame target, int length) {
+            this.mode = mode;
+            this.target = target;
+            this.length = length;
+            chunkCount = Math.max(1, Math.min(chunks.length, length/MIN_CHUNK));
+
+            reinitialize();
+            forkJoin.invoke(this);
+        }
+
+        @Override protected void compute() {
+            for (int c = 1; c < chunkCount; ++c) {
+                chunks[c].reinitialize();
+                chunks[c].fork();
+            }
+            chunks[0].run();
+            for (int c = 1; c < chunkCount; ++c) {
+                chunks[c].join();
+            }
+        }
+    }
+
+    /**
+     * One chunk of a Pass: a contiguous range of the ring (or of the slots,
+     * for WRITE_SLOTS).
+     */
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+
+        // survivors counted by COUNT, and where MOVE puts the first of them
+        int live;
+        int start;
+
+        Chunk(int index) {
+            this.index = index;
+        }
+
+        @Override protected void compute() {
+            run();
+        }
+
+        void run() {
+            int from = (int)((long)pass.length*index/pass.chunkCount);
+            int to = (int)((long)pass.length*(index + 1)/pass.chunkCount);
+            Frame f = pass.target;
+
+            if (pass.mode == Pass.WRITE_SLOTS) {
+                for (int i = from; i < to; ++i) writeSlot(f, i);
+            } else if (pass.mode == Pass.COUNT) {
+                int survivors = 0;
+                for (int k = from; k < to; ++k) {
+                    int i = (head + k) % capacity;
+                    if (time - born[i] < life[i]) ++survivors;
+                }
+                live = survivors;
+            } else {
+                int v = start;
+                for (int k = from; k < to; ++k) {
+                    int i = (head + k) % capacity;
+                    if (time - born[i] >= life[i]) continue;
+
+                    sox[v] = ox[i]; soy[v] = oy[i]; soz[v] = oz[i];
+                    sdx[v] = dx[i]; sdy[v] = dy[i]; sdz[v] = dz[i];
+                    sr[v] = r[i]; sg[v] = g[i]; sb[v] = b[i];
+                    ssize[v] = size[i];
+                    sborn[v] = born[i];
+                    slife[v] = life[i];
+                    writeVertex(f, v, i);
+                    ++v;
+                }
+            }
+        }
+    }
+}
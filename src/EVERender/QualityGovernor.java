@@ -0,0 +1,139 @@
+package EVERender;
+
+/**
+ * Keeps the frame rate near a target by stepping rendering quality down when
+ * frames are slow and back up when there is time to spare. Needs no
+ * display: it only decides the Quality, which the view applies.
+ *
+ * Frame times are collected over windows of WINDOW seconds. Quality drops
+ * a level after SLOW_WINDOWS windows in a row whose 90th percentile frame
+ * time is over the target by SLOW_MARGIN, and rises a level after
+ * FAST_WINDOWS windows in a row well under it. Climbing back is slower and
+ * needs more headroom than dropping, so quality doesn't flap between two
+ * levels, and counting starts over after every change, to let it settle.
+ */
+public class QualityGovernor {
+    // seconds of frames per window
+    private static final float WINDOW = 1f;
+
+    private static final int SLOW_WINDOWS = 2;
+    private static final int FAST_WINDOWS = 5;
+
+    // the target frame time is missed above SLOW_MARGIN times it, and there
+    // is room to spare below FAST_MARGIN times it
+    private static final float SLOW_MARGIN = 1.15f;
+    private static final float FAST_MARGIN = 0.7f;
+
+    /**
+     * The levels of quality, best first. Each level gives up a little more
+     * than the one before it.
+     */
+    public static final Quality[] LEVELS = {
+        new Quality(1f, 1f, true, 1f),
+        new Quality(.5f, 1f, true, 1f),
+        new Quality(.5f, .25f, true, 1f),
+        new Quality(.5f, .25f, true, .75f),
+        new Quality(.25f, 0f, true, .75f),
+        new Quality(.25f, 0f, false, .75f),
+        new Quality(.25f, 0f, false, .5f),
+    };
+
+    private final long targetNanos;
+    private final Histogram window = new Histogram();
+    private float windowAge = 0;
+    private int level = 0;
+    private int slow = 0, fast = 0;
+
+    /**
+     * Creates a QualityGovernor at the best quality.
+     *
+     * @param targetFps the frame rate to keep
+     */
+    public QualityGovernor(float targetFps) {
+        targetNanos = (long)(1e9/targetFps);
+    }
+
+    /**
+     * Counts a frame, and changes the quality level if the window it ends
+     * calls for it. Changes are logged.
+     *
+     * @param tpf the frame's duration in seconds
+     * @return whether the quality level changed
+     */
+    public boolean record(float tpf) {
+        window.record((long)(tpf*1e9));
+        windowAge += tpf;
+        if (windowAge < WINDOW) return false;
+
+        long p90 = window.getPercentile(0.9);
+        window.reset();
+        windowAge = 0;
+
+        if (p90 > targetNanos*SLOW_MARGIN) {
+            ++slow;
+            fast = 0;
+        } else if (p90 < targetNanos*FAST_MARGIN) {
+            ++fast;
+            slow = 0;
+        } else {
+            slow = fast = 0;
+        }
+
+        int previous = level;
+        if (slow >= SLOW_WINDOWS && level < LEVELS.length - 1) {
+            ++level;
+        } else if (fast >= FAST_WINDOWS && level > 0) {
+            --level;
+        }
+        if (level == previous) return false;
+
+        slow = fast = 0;
+        System.out.printf("Quality %s to level %d (90%% of frames under %.1f ms, target %.1f ms): %s%n",
+                level > previous ? "down" : "up", level,
+                p90/1e6, targetNanos/1e6, LEVELS[level]);
+        return true;
+    }
+
+    /**
+     * @return the current level, 0 being the best
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the quality of the current level
+     */
+    public Quality getQuality() {
+        return LEVELS[level];
+    }
+
+    /**
+     * What to draw at one level of quality.
+     */
+    public static class Quality {
+        // fraction of each particle pool's capacity that may be alive
+        public final float particles;
+
+        // fraction of the parallax stars drawn
+        public final float parallax;
+
+        // whether the jumpgate lines are drawn
+        public final boolean lines;
+
+        // fraction of the screen's resolution the scene is rendered at
+        public final float renderScale;
+
+        public Quality(float particles, float parallax, boolean lines, float renderScale) {
+            this.particles = particles;
+            this.parallax = parallax;
+            this.lines = lines;
+            this.renderScale = renderScale;
+        }
+
+        @Override public String toString() {
+            return String.format("%.0f%% particles, %.0f%% parallax stars, lines %s, %.0f%% resolution",
+                    particles*100, parallax*100, lines ? "on" : "off", renderScale*100);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package EVERender;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Node;
+import com.jme3.texture.FrameBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture2D;
+import com.jme3.ui.Picture;
+
+/**
+ * Renders a scene at a fraction of the screen's resolution, to trade
+ * sharpness for fill rate on slow GPUs. Below full scale, the scene is moved
+ * from the main view to an off-screen view drawing into a smaller
+ * FrameBuffer, whose texture is stretched over the screen behind the GUI.
+ * At full scale, the scene is drawn straight to the screen as usual. The
+ * smaller FrameBuffer has one sample per pixel, so the screen's multisampling
+ * is lost below full scale.
+ *
+ * Render thread only.
+ */
+public class RenderScaler {
+    private final AssetManager assetManager;
+    private final RenderManager renderManager;
+    private final ViewPort screen;
+    private final Camera cam;
+    private final Node scene;
+    private final Node gui;
+
+    private float scale = 1;
+
+    // the off-screen view and what shows it, while below full scale
+    private ViewPort scaledView;
+    private Camera scaledCam;
+    private Picture picture;
+
+    /**
+     * Creates a RenderScaler at full scale.
+     *
+     * @param assetManager the application's asset manager
+     * @param renderManager the application's render manager
+     * @param screen the main view, showing the scene
+     * @param scene the scene to scale
+     * @param gui the GUI node, drawn over the scene at full scale
+     */
+    public RenderScaler(AssetManager assetManager, RenderManager renderManager,
+            ViewPort screen, Node scene, Node gui) {
+        this.assetManager = assetManager;
+        this.renderManager = renderManager;
+        this.screen = screen;
+        this.cam = screen.getCamera();
+        this.scene = scene;
+        this.gui = gui;
+    }
+
+    /**
+     * Changes the resolution the scene is rendered at.
+     *
+     * @param scale the fraction of the screen's resolution, up to 1
+     */
+    public void setScale(float scale) {
+        scale = Math.min(scale, 1f);
+        if (scale == this.scale) return;
+
+        if (scaledView != null) {
+            renderManager.removePreView(scaledView);
+            scaledView.detachScene(scene);
+            gui.detachChild(picture);
+            scaledView = null;
+            scaledCam = null;
+            picture = null;
+        }
+
+        if (scale < 1) {
+            int width = Math.max(1, (int)(cam.getWidth()*scale));
+            int height = Math.max(1, (int)(cam.getHeight()*scale));
+
+            scaledCam = cam.clone();
+            scaledCam.resize(width, height, true);
+
+            Texture2D texture = new Texture2D(width, height, Image.Format.RGBA8);
+            FrameBuffer buffer = new FrameBuffer(width, height, 1);
+            buffer.setDepthBuffer(Image.Format.Depth);
+            buffer.setColorTexture(texture);
+
+            scaledView = renderManager.createPreView("Scaled", scaledCam);
+            scaledView.setClearFlags(true, true, true);
+            scaledView.setBackgroundColor(screen.getBackgroundColor());
+            scaledView.setOutputFrameBuffer(buffer);
+
+            screen.detachScene(scene);
+            scaledView.attachScene(scene);
+
+            picture = new Picture("Scaled");
+            picture.setTexture(assetManager, texture, false);
+            picture.setWidth(cam.getWidth());
+            picture.setHeight(cam.getHeight());
+            picture.setLocalTranslation(0, 0, -1);
+            gui.attachChildAt(picture, 0);
+        } else {
+            screen.attachScene(scene);
+        }
+
+        this.scale = scale;
+    }
+
+    /**
+     * Points the off-screen camera where the screen's camera points. Call
+     * every frame after moving the camera.
+     */
+    public void update() {
+        if (scaledCam == null) return;
+
+        scaledCam.setLocation(cam.getLocation());
+        scaledCam.setRotation(cam.getRotation());
+    }
+
+    /**
+     * @return the fraction of the screen's resolution the scene is rendered
+     *      at
+     */
+    public float getScale() {
+        return scale;
+    }
+}
@@ -0,0 +1,253 @@
+package EVERender;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Settings read from config.txt: star and line colors, speed of jump/kill
+ * simulation, effect limits, the API to read from and whether to run as a
+ * screensaver. Needs no display, so the same settings drive both EveRender
+ * and the headless runner.
+ */
+public class Settings {
+    // the file settings are read from, in the working directory
+    public static final String FILE = "config.txt";
+    
+    public float SPEEDUP_JUMPS = 1.0f;
+    public float SPEEDUP_KILLS = 1.0f;
+    
+    // maximum number of kill or jump effects alive at once
+    public int MAX_PARTICLES = 4096;
+    
+    // whether kill and jump effects are animated on the GPU
+    public boolean SHADER_EFFECTS = false;
+    
+    // root of the EVE API that kills and jumps are read from
+    public String API_URL = APIScraper.DEFAULT_URL;
+    
+    // live effects per pool from which they are updated on every core, or 0
+    // to always update them on one thread
+    public int PARALLEL_THRESHOLD = 16384;
+    
+    // live effects, in both pools together, from which kills and jumps are
+    // drawn as a heatmap on the stars and gates instead, or 0 to never
+    public int HEATMAP_THRESHOLD = 3072;
+    
+    // simulation ticks per second on a thread of its own, or 0 to simulate
+    // on the render thread once per frame
+    public int SIMULATION_RATE = 0;
+    
+    // background stars drawn in front of the skybox, all in one mesh
+    public int PARALLAX_STARS = 2048;
+    
+    // file that fetched activity is recorded to, or empty to not record it
+    public String JOURNAL = "activity.journal";
+    
+    // whether to play the journal back instead of reading the API, how many
+    // times faster than it was recorded, and from how many hours before its
+    // last snapshot
+    public boolean REPLAY = false;
+    public float REPLAY_SPEED = 2000;
+    public float REPLAY_HOURS = 7*24;
+    
+    // frame rate below which quality is lowered until it's reached, or 0
+    // to always draw at full quality
+    public float TARGET_FPS = 0;
+    
+    // multisampling of the screen, as samples per pixel
+    public int SAMPLES = 16;
+    
+    // whether to draw frame timings and effect counts over the map
+    public boolean OVERLAY = false;
+    
+    public Vector3f
+            nullColor1,
+            nullColor2,
+            lowColor1,
+            lowColor2,
+            highColor1,
+            highColor2,
+            lineColor;
+    
+    // whether to exit as soon as any input is recieved
+    public boolean screensaver = false;
+    
+    /**
+     * Loads settings from config.txt. Settings missing from the file keep
+     * their current values.
+     * 
+     * @return whether the file could be read
+     */
+    public boolean load() {
+        ArrayList<String> settingsText = null;
+        try {
+            Path path = Paths.get(FILE);
+            settingsText = (ArrayList<String>)Files.readAllLines(
+                    path, StandardCharsets.US_ASCII);
+        } catch (IOException ex) {
+            System.out.println("IOException when reading config.txt");
+            return false;
+        }
+        
+        for (String line : settingsText) {
+            int commentIndex = line.indexOf("//");
+            if (commentIndex >= 0) line = line.substring(0, commentIndex);
+            
+            String[] tokens = line.split(":", 2);
+            if (tokens.length < 2) continue;
+            
+            String type = tokens[0].toLowerCase().trim();
+            
+            if (type.equals("nullsec") || type.equals("lowsec") || type.equals("highsec")) {
+                String[] colors = tokens[1].split(";");
+                if (colors.length != 2) continue;
+                
+                if (type.equals("nullsec")) {
+                    nullColor1 = parseColor(colors[0]);
+                    nullColor2 = parseColor(colors[1]);
+                } else if (type.equals("lowsec")) {
+                    lowColor1 = parseColor(colors[0]);
+                    lowColor2 = parseColor(colors[1]);
+                } else if (type.equals("highsec")) {
+                    highColor1 = parseColor(colors[0]);
+                    highColor2 = parseColor(colors[1]);
+                }
+            } else if (type.equals("lines")) {
+                lineColor = parseColor(tokens[1]);
+            } else if (type.equals("jumpspeed")) {
+                SPEEDUP_JUMPS = Float.parseFloat(tokens[1]);
+            } else if (type.equals("killspeed")) {
+                SPEEDUP_KILLS = Float.parseFloat(tokens[1]);
+            } else if (type.equals("particles")) {
+                MAX_PARTICLES = Integer.parseInt(tokens[1].trim());
+            } else if (type.equals("shadereffects")) {
+                SHADER_EFFECTS = parseBool(tokens[1]);
+            } else if (type.equals("api")) {
+                API_URL = tokens[1].trim();
+            } else if (type.equals("parallelthreshold")) {
+                PARALLEL_THRESHOLD = Integer.parseInt(tokens[1].trim());
+            } else if (type.equals("heatmapthreshold")) {
+                HEATMAP_THRESHOLD = Integer.parseInt(tokens[1].trim());
+            } else if (type.equals("simulationrate")) {
+                SIMULATION_RATE = Integer.parseInt(tokens[1].trim());
+            } else if (type.equals("parallaxstars")) {
+                PARALLAX_STARS = Integer.parseInt(tokens[1].trim());
+            } else if (type.equals("journal")) {
+                JOURNAL = tokens[1].trim();
+            } else if (type.equals("replay")) {
+                REPLAY = parseBool(tokens[1]);
+            } else if (type.equals("replayspeed")) {
+                REPLAY_SPEED = Float.parseFloat(tokens[1].trim());
+            } else if (type.equals("replayhours")) {
+                REPLAY_HOURS = Float.parseFloat(tokens[1].trim());
+            } else if (type.equals("targetfps")) {
+                TARGET_FPS = Float.parseFloat(tokens[1].trim());
+            } else if (type.equals("samples")) {
+                SAMPLES = Integer.parseInt(tokens[1].trim());
+            } else if (type.equals("overlay")) {
+                OVERLAY = parseBool(tokens[1]);
+            } else if (type.equals("screensaver")) {
+                screensaver = parseBool(tokens[1]);
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Takes on the settings from another load() that can change while the
+     * map is drawn: the star and line colors, and the speeds. Colors that
+     * failed to parse are kept as they were. The rest only take effect on
+     * restart.
+     * 
+     * @param newer settings loaded after this
+     */
+    public void update(Settings newer) {
+        if (newer.nullColor1 != null && newer.nullColor2 != null
+                && newer.lowColor1 != null && newer.lowColor2 != null
+                && newer.highColor1 != null && newer.highColor2 != null) {
+            nullColor1 = newer.nullColor1;
+            nullColor2 = newer.nullColor2;
+            lowColor1 = newer.lowColor1;
+            lowColor2 = newer.lowColor2;
+            highColor1 = newer.highColor1;
+            highColor2 = newer.highColor2;
+        } else {
+            System.out.println("Keeping the old star colors; config.txt has an invalid one");
+        }
+        
+        if (newer.lineColor != null) lineColor = newer.lineColor;
+        
+        SPEEDUP_JUMPS = newer.SPEEDUP_JUMPS;
+        SPEEDUP_KILLS = newer.SPEEDUP_KILLS;
+    }
+    
+    private boolean parseBool(String in) {
+        in = in.trim().toLowerCase();
+        
+        if (in.equals("true") ||
+                in.equals("yes") ||
+                in.equals("hija'") || // Klingon
+                in.equals("hislah")) return true;
+        
+        if (in.equals("false") ||
+                in.equals("no") ||
+                in.equals("ghobe'")) return false;
+        
+        return false;
+    }
+    
+    /**
+     * Parses a single color with the format "%f,%f,%f". Returns null if a
+     * NumberFormatException was raised.
+     * 
+     * @param in the string to parse
+     * @return the parsed color, or null
+     */
+    private Vector3f parseColor(String in) {
+        String[] rgb = in.split(",");
+        if (rgb.length != 3) return null;
+        
+        Vector3f color;
+        
+        try {
+            color = new Vector3f(
+                    Float.parseFloat(rgb[0]),
+                    Float.parseFloat(rgb[1]),
+                    Float.parseFloat(rgb[2]));
+        } catch(NumberFormatException e) {
+            color = null;
+        }
+        
+        return color;
+    }
+    
+    /**
+     * Sets the color of every star in a catalog from its security status,
+     * using the gradients from load().
+     * 
+     * @param stars the catalog to color
+     */
+    public void colorStars(StarCatalog stars) {
+        for (int i = 0; i < stars.size(); ++i) {
+            float security = stars.security[i];
+            Vector3f color;
+            
+            if (security < 0f) {
+                color = FastMath.interpolateLinear(security+1, nullColor1, nullColor2);
+            } else if (security < 0.5f) {
+                color = FastMath.interpolateLinear(security*2, lowColor1, lowColor2);
+            } else {
+                color = FastMath.interpolateLinear((security-.5f)*2, highColor1, highColor2);
+            }
+            
+            stars.setColor(i, color.x, color.y, color.z);
+        }
+    }
+}
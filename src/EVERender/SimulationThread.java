@@ -0,0 +1,78 @@
+package EVERender;
+
+/**
+ * Simulates a Galaxy on its own thread at a fixed tick rate, so that the
+ * cost of spawning and moving effects doesn't come out of the render
+ * thread's frame budget. The galaxy's pools must hand off their frames; the
+ * render thread then only calls Galaxy.present() each frame.
+ *
+ * If the simulation falls more than a few ticks behind, for example while
+ * the machine is suspended, the missed ticks are skipped instead of being
+ * simulated in a burst.
+ */
+public class SimulationThread extends Thread {
+    // ticks the simulation may fall behind before they are skipped
+    private static final int MAX_LAG = 5;
+
+    private final Galaxy g;
+    private final float tick;
+    private final long tickNanos;
+    private volatile boolean terminate = false;
+
+    private volatile long skipped = 0;
+
+    /**
+     * Creates a new instance of SimulationThread. Does not start simulating.
+     * 
+     * @param g the Galaxy to simulate
+     * @param rate ticks per second
+     */
+    public SimulationThread(Galaxy g, int rate) {
+        this.g = g;
+        this.tick = 1f/rate;
+        this.tickNanos = 1000000000L/rate;
+
+        setName("Simulation");
+        setDaemon(true);
+    }
+
+    /**
+     * The method executed by Thread. Simulates one tick at a time, sleeping
+     * until the next one is due, until terminated.
+     */
+    @Override public void run() {
+        long due = System.nanoTime();
+
+        while (!terminate) {
+            g.simulate(tick);
+            due += tickNanos;
+
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait/1000000, (int)(wait%1000000));
+                } catch (InterruptedException ex) {
+                    // terminate() interrupts the sleep
+                }
+            } else if (-wait > MAX_LAG*tickNanos) {
+                skipped += -wait/tickNanos;
+                due = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * @return the number of ticks skipped because the simulation fell behind
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Instructs this thread to terminate as soon as possible.
+     */
+    public void terminate() {
+        terminate = true;
+        interrupt();
+    }
+}
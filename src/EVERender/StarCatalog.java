@@ -0,0 +1,161 @@
+package EVERender;
+
+import java.util.Arrays;
+
+/**
+ * Every star system in the map, stored column by column in primitive arrays
+ * indexed by a dense star index from zero. EVE system IDs are nearly
+ * contiguous, so IDs are mapped to indices through a table offset by the
+ * lowest ID instead of a hash map.
+ *
+ * Kills and jumps per hour are copied in by Galaxy from the last
+ * ActivitySnapshot published to it, on the thread that simulates the map;
+ * everything else is fixed once loaded, except colors, which follow the
+ * settings and are recolored on the render thread when they are reloaded.
+ */
+public class StarCatalog {
+    private int count = 0;
+
+    // columns; may be replaced by longer arrays while stars are added
+    public int[] id;
+    public float[] x, y, z;
+    public float[] r, g, b;
+    public float[] size;
+    public float[] security;
+
+    public int[] kills;
+    public int[] jumps;
+
+    // index of each ID, offset by idBase; -1 for unknown IDs
+    private int idBase = 0;
+    private int[] byId = new int[0];
+
+    /**
+     * Creates an empty StarCatalog.
+     *
+     * @param capacity the number of stars to allocate room for
+     */
+    public StarCatalog(int capacity) {
+        id = new int[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        z = new float[capacity];
+        r = new float[capacity];
+        g = new float[capacity];
+        b = new float[capacity];
+        size = new float[capacity];
+        security = new float[capacity];
+        kills = new int[capacity];
+        jumps = new int[capacity];
+    }
+
+    /**
+     * Adds a star to the catalog, growing the columns if needed. Its color is
+     * black until set.
+     *
+     * @param systemId the EVE ID of the system
+     * @param px the star's position
+     * @param py the star's position
+     * @param pz the star's position
+     * @param radius the size of the star's sprite
+     * @param sec the system's security status
+     * @return the star's index
+     */
+    public int add(int systemId, float px, float py, float pz, float radius, float sec) {
+        if (count >= id.length) grow(Math.max(16, id.length*2));
+
+        int i = count++;
+        id[i] = systemId;
+        x[i] = px;
+        y[i] = py;
+        z[i] = pz;
+        size[i] = radius;
+        security[i] = sec;
+        index(systemId, i);
+
+        return i;
+    }
+
+    /**
+     * Sets the color of a star.
+     *
+     * @param i the star's index
+     * @param red the star's color
+     * @param green the star's color
+     * @param blue the star's color
+     */
+    public void setColor(int i, float red, float green, float blue) {
+        r[i] = red;
+        g[i] = green;
+        b[i] = blue;
+    }
+
+    /**
+     * @param systemId an EVE system ID
+     * @return the index of the system's star, or -1 if it isn't in the map
+     */
+    public int indexOf(int systemId) {
+        int offset = systemId - idBase;
+        if (offset < 0 || offset >= byId.length) return -1;
+
+        return byId[offset];
+    }
+
+    /**
+     * @return the number of stars in the catalog
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param i a star index
+     * @param j another star index
+     * @return the distance between the two stars
+     */
+    public float distance(int i, int j) {
+        float dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+        return (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+    /**
+     * Reallocates every column with a new capacity.
+     */
+    private void grow(int capacity) {
+        id = Arrays.copyOf(id, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        r = Arrays.copyOf(r, capacity);
+        g = Arrays.copyOf(g, capacity);
+        b = Arrays.copyOf(b, capacity);
+        size = Arrays.copyOf(size, capacity);
+        security = Arrays.copyOf(security, capacity);
+        kills = Arrays.copyOf(kills, capacity);
+        jumps = Arrays.copyOf(jumps, capacity);
+    }
+
+    /**
+     * Records the index of an ID, growing the ID table to cover it.
+     */
+    private void index(int systemId, int i) {
+        if (byId.length == 0) {
+            idBase = systemId;
+        }
+
+        if (systemId < idBase) {
+            int grow = idBase - systemId;
+            int[] table = new int[byId.length + grow];
+            Arrays.fill(table, 0, grow, -1);
+            System.arraycopy(byId, 0, table, grow, byId.length);
+            byId = table;
+            idBase = systemId;
+        } else if (systemId - idBase >= byId.length) {
+            int length = byId.length;
+            byId = Arrays.copyOf(byId, Math.max(systemId - idBase + 1, length*2));
+            Arrays.fill(byId, length, byId.length, -1);
+        }
+
+        byId[systemId - idBase] = i;
+    }
+}
@@ -0,0 +1,166 @@
+package EVERender;
+
+import com.jme3.scene.Mesh;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * A set of point sprites stored in a single Points mesh. Points are written
+ * straight into shared position/color/size buffers and addressed by their
+ * index, so thousands of stars need only one Geometry and one Material.
+ */
+public class StarField {
+    private final int capacity;
+    private int count = 0;
+
+    private final FloatBuffer positions;
+    private final FloatBuffer colors;
+    private final FloatBuffer sizes;
+
+    private Mesh mesh;
+
+    /**
+     * Creates an empty StarField able to hold a given number of points.
+     *
+     * @param capacity the maximum number of points
+     */
+    public StarField(int capacity) {
+        this.capacity = capacity;
+        positions = BufferUtils.createFloatBuffer(capacity*3);
+        colors = BufferUtils.createFloatBuffer(capacity*3);
+        sizes = BufferUtils.createFloatBuffer(capacity);
+    }
+
+    /**
+     * Creates a field of white background stars scattered around the map,
+     * more sparsely and with larger points further out, for a slight
+     * parallax effect in front of the skybox. The same seed always gives the
+     * same stars.
+     *
+     * @param count the number of stars
+     * @param seed the seed the stars are generated from
+     * @return the new field
+     */
+    public static StarField createParallax(int count, long seed) {
+        Random random = new Random(seed);
+        StarField field = new StarField(count);
+
+        for (int i = 0; i < count; ++i) {
+            float radius = random.nextFloat()*16 + 2;
+            radius *= radius;
+            double theta = random.nextFloat()*2*Math.PI;
+            double phi = random.nextFloat()*2*Math.PI;
+
+            float size = random.nextFloat()*1.5f*(float)Math.sqrt(radius);
+            size *= size;
+
+            field.add(
+                    radius*(float)(Math.sin(theta)*Math.cos(phi)),
+                    radius*(float)(Math.sin(theta)*Math.sin(phi)),
+                    radius*(float)Math.cos(theta),
+                    1f, 1f, 1f, size);
+        }
+
+        return field;
+    }
+
+    /**
+     * Adds a point to the field and returns its index.
+     *
+     * @param x the point's position
+     * @param y the point's position
+     * @param z the point's position
+     * @param r the point's color
+     * @param g the point's color
+     * @param b the point's color
+     * @param size the point's radius
+     * @return the index of the new point in this field's buffers
+     */
+    public int add(float x, float y, float z, float r, float g, float b, float size) {
+        if (count >= capacity) {
+            throw new IllegalStateException("StarField is full (" + capacity + " points)");
+        }
+
+        int index = count++;
+        positions.put(index*3, x)
+                .put(index*3 + 1, y)
+                .put(index*3 + 2, z);
+        sizes.put(index, size);
+        setColor(index, r, g, b);
+
+        return index;
+    }
+
+    /**
+     * Adds every star in a catalog to the field, so that each star's point
+     * has the same index as the star.
+     *
+     * @param stars the stars to add
+     */
+    public void addAll(StarCatalog stars) {
+        for (int i = 0; i < stars.size(); ++i) {
+            add(stars.x[i], stars.y[i], stars.z[i],
+                    stars.r[i], stars.g[i], stars.b[i],
+                    stars.size[i]);
+        }
+    }
+
+    /**
+     * Sets the color of a point already in the field. Marks the color buffer
+     * for upload if the mesh has been created.
+     *
+     * @param index the index returned by add()
+     * @param r the new color
+     * @param g the new color
+     * @param b the new color
+     */
+    public void setColor(int index, float r, float g, float b) {
+        colors.put(index*3, r)
+                .put(index*3 + 1, g)
+                .put(index*3 + 2, b);
+
+        if (mesh != null) {
+            mesh.getBuffer(VertexBuffer.Type.Color).setUpdateNeeded();
+        }
+    }
+
+    /**
+     * @return the number of points in this field
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the Points mesh for this field, creating it on the first call.
+     * Points added afterwards are not drawn.
+     *
+     * @return the mesh containing every point in this field
+     */
+    public Mesh getMesh() {
+        if (mesh != null) return mesh;
+
+        FloatBuffer texCoords = BufferUtils.createFloatBuffer(count*4);
+        for (int i = 0; i < count; ++i) {
+            texCoords.put(0f).put(0f).put(1f).put(1f);
+        }
+        texCoords.flip();
+
+        positions.limit(count*3);
+        colors.limit(count*3);
+        sizes.limit(count);
+
+        mesh = new Mesh();
+        mesh.setMode(Mesh.Mode.Points);
+        mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+        mesh.setBuffer(VertexBuffer.Type.Color, 3, colors);
+        mesh.setBuffer(VertexBuffer.Type.Size, 1, sizes);
+        mesh.setBuffer(VertexBuffer.Type.TexCoord, 4, texCoords);
+        mesh.updateCounts();
+        mesh.updateBound();
+
+        return mesh;
+    }
+}
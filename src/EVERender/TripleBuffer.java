@@ -0,0 +1,82 @@
+package EVERender;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the latest of a stream of items from one writer thread to one
+ * reader thread without locking. Three items take turns: the writer fills the
+ * back item and publishes it, the reader acquires the most recently
+ * published item as its front item, and the third waits in the middle. The
+ * writer never waits for the reader, and the reader never sees an item while
+ * it is being written; items the reader is too slow to acquire are
+ * overwritten.
+ *
+ * @param <T> the type of the items
+ */
+public class TripleBuffer<T> {
+    // set in middle when it holds an item not yet acquired
+    private static final int FRESH = 4;
+
+    private final Object[] items;
+
+    // index of the middle item, or'd with FRESH
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // owned by the writer and the reader respectively
+    private int back = 2;
+    private int front = 0;
+
+    /**
+     * Creates a TripleBuffer of three distinct items. The first is the front
+     * item until something is published.
+     *
+     * @param first the initial front item
+     * @param second another item
+     * @param third another item
+     */
+    public TripleBuffer(T first, T second, T third) {
+        items = new Object[] { first, second, third };
+    }
+
+    /**
+     * Writer method.
+     *
+     * @return the item to write, which is not visible to the reader
+     */
+    @SuppressWarnings("unchecked")
+    public T getBack() {
+        return (T)items[back];
+    }
+
+    /**
+     * Writer method. Makes the back item the latest, and takes a new back
+     * item.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & ~FRESH;
+    }
+
+    /**
+     * Reader method. Makes the latest published item the front item, if one
+     * was published since the last call.
+     *
+     * @return whether the front item changed
+     */
+    public boolean acquire() {
+        if ((middle.get() & FRESH) == 0) return false;
+
+        front = middle.getAndSet(front) & ~FRESH;
+        return true;
+    }
+
+    /**
+     * Reader method.
+     *
+     * @return the item acquired last, which the writer won't touch until
+     *      the next acquire()
+     */
+    @SuppressWarnings("unchecked")
+    public T getFront() {
+        return (T)items[front];
+    }
+}
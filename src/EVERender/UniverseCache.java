@@ -0,0 +1,209 @@
+package EVERender;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary copy of the star catalog and gate graph, so that systems.txt and
+ * gates.txt only need to be parsed when they change. The cache records the
+ * size and modification time of both text files and is ignored if either
+ * differs, or if it was written by a different version of the format.
+ *
+ * Colors are not cached, since they depend on config.txt; callers should
+ * color the stars after reading them.
+ *
+ * Layout (big-endian): header, then the id, x, y, z, size and security
+ * columns of every star, then the gate graph's offsets and neighbors.
+ */
+public class UniverseCache {
+    private static final int MAGIC = 0x45564555; // "EVEU"
+    private static final int VERSION = 2;
+
+    // magic, version, 2 x (size, mtime), stars, neighbors
+    private static final int HEADER_SIZE = 4 + 4 + 2*(8 + 8) + 4 + 4;
+
+    private final Path cache;
+    private final Path systems;
+    private final Path gates;
+
+    private StarCatalog stars;
+    private GateGraph graph;
+
+    /**
+     * Creates an UniverseCache. Does not read or write anything.
+     *
+     * @param cache the cache file
+     * @param systems the systems.txt file the cache is built from
+     * @param gates the gates.txt file the cache is built from
+     */
+    public UniverseCache(Path cache, Path systems, Path gates) {
+        this.cache = cache;
+        this.systems = systems;
+        this.gates = gates;
+    }
+
+    /**
+     * Reads the cache if it is up to date with the text files. Returns false,
+     * without printing anything, if the cache is missing or stale.
+     *
+     * @return whether the stars and gates were read
+     */
+    public boolean read() {
+        if (!Files.isRegularFile(cache)) return false;
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(cache, StandardOpenOption.READ);
+            
+            // check the header with a plain read, so that a stale cache is
+            // never mapped and can be replaced
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != MAGIC
+                    || header.getInt() != VERSION
+                    || header.getLong() != Files.size(systems)
+                    || header.getLong() != Files.getLastModifiedTime(systems).toMillis()
+                    || header.getLong() != Files.size(gates)
+                    || header.getLong() != Files.getLastModifiedTime(gates).toMillis()) {
+                return false;
+            }
+
+            int count = header.getInt();
+            int links = header.getInt();
+            long length = HEADER_SIZE + 4L*(6*count + count + 1 + links);
+            if (channel.size() != length) return false;
+
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            data.position(HEADER_SIZE);
+
+            int[] id = new int[count];
+            float[] x = new float[count], y = new float[count], z = new float[count];
+            float[] size = new float[count], security = new float[count];
+            data.asIntBuffer().get(id);
+            data.position(data.position() + 4*count);
+            data.asFloatBuffer().get(x);
+            data.position(data.position() + 4*count);
+            data.asFloatBuffer().get(y);
+            data.position(data.position() + 4*count);
+            data.asFloatBuffer().get(z);
+            data.position(data.position() + 4*count);
+            data.asFloatBuffer().get(size);
+            data.position(data.position() + 4*count);
+            data.asFloatBuffer().get(security);
+            data.position(data.position() + 4*count);
+
+            int[] offsets = new int[count + 1];
+            int[] neighbors = new int[links];
+            data.asIntBuffer().get(offsets);
+            data.position(data.position() + 4*(count + 1));
+            data.asIntBuffer().get(neighbors);
+
+            stars = new StarCatalog(count);
+            for (int i = 0; i < count; ++i) {
+                stars.add(id[i], x[i], y[i], z[i], size[i], security[i]);
+            }
+            graph = new GateGraph(offsets, neighbors);
+        } catch (IOException ex) {
+            System.out.println("IOException when reading " + cache);
+            return false;
+        } finally {
+            close(channel);
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes stars and gates loaded from the text files to the cache,
+     * replacing any existing cache. Failure to write is reported but
+     * otherwise ignored, as the cache is only an optimization.
+     *
+     * @param stars the catalog returned by UniverseLoader.loadStarData()
+     * @param graph the graph returned by UniverseLoader.loadGateData()
+     */
+    public void write(StarCatalog stars, GateGraph graph) {
+        this.stars = stars;
+        this.graph = graph;
+
+        int count = stars.size();
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+
+        ByteBuffer data = ByteBuffer.allocate(
+                HEADER_SIZE + 4*(6*count + offsets.length + neighbors.length));
+
+        try {
+            data.putInt(MAGIC).putInt(VERSION)
+                    .putLong(Files.size(systems))
+                    .putLong(Files.getLastModifiedTime(systems).toMillis())
+                    .putLong(Files.size(gates))
+                    .putLong(Files.getLastModifiedTime(gates).toMillis())
+                    .putInt(count)
+                    .putInt(neighbors.length);
+
+            data.asIntBuffer().put(stars.id, 0, count);
+            data.position(data.position() + 4*count);
+            for (float[] column : new float[][] {
+                    stars.x, stars.y, stars.z, stars.size, stars.security }) {
+                data.asFloatBuffer().put(column, 0, count);
+                data.position(data.position() + 4*count);
+            }
+            data.asIntBuffer().put(offsets);
+            data.position(data.position() + 4*offsets.length);
+            data.asIntBuffer().put(neighbors);
+            data.position(data.position() + 4*neighbors.length);
+            data.flip();
+
+            // write beside the cache and move over it, so that a partial
+            // write never looks like a valid cache
+            Path temp = cache.resolveSibling(cache.getFileName() + ".tmp");
+            FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                while (data.hasRemaining()) channel.write(data);
+            } finally {
+                channel.close();
+            }
+            Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            System.out.println("IOException when writing " + cache);
+        }
+    }
+
+    /**
+     * Closes a channel read from, if open. Whatever was read is already
+     * checked, so failure to close is ignored.
+     */
+    private static void close(FileChannel channel) {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // nothing left to lose
+        }
+    }
+
+    /**
+     * @return the cached stars, uncolored, or null if nothing was read
+     */
+    public StarCatalog getStars() {
+        return stars;
+    }
+
+    /**
+     * @return the cached gate graph, or null if nothing was read
+     */
+    public GateGraph getGates() {
+        return graph;
+    }
+}
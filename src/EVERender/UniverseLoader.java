@@ -0,0 +1,175 @@
+package EVERender;
+
+import com.jme3.math.FastMath;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Loads the stars and jumpgates of the map from universe.cache, or from the
+ * systems.txt and gates.txt files in assets, copied from EVE's static data
+ * dump.
+ */
+public class UniverseLoader {
+    private final Settings settings;
+
+    private StarCatalog stars;
+    private GateGraph gates;
+
+    /**
+     * Creates an UniverseLoader. Does not read anything.
+     * 
+     * @param settings loaded settings, used to color the stars
+     */
+    public UniverseLoader(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Loads stars and gates from universe.cache, or parses them from the
+     * text files in assets and rebuilds the cache if it is missing or out of
+     * date.
+     */
+    public void load() {
+        UniverseCache cache = new UniverseCache(
+                Paths.get("universe.cache"),
+                Paths.get("assets/systems.txt"),
+                Paths.get("assets/gates.txt"));
+
+        if (cache.read()) {
+            stars = cache.getStars();
+            gates = cache.getGates();
+            settings.colorStars(stars);
+        } else {
+            stars = loadStarData();
+            gates = loadGateData(stars);
+            cache.write(stars, gates);
+        }
+    }
+
+    /**
+     * @return the stars read by load(), or null before it is called
+     */
+    public StarCatalog getStars() {
+        return stars;
+    }
+
+    /**
+     * @return the gates read by load(), or null before it is called
+     */
+    public GateGraph getGates() {
+        return gates;
+    }
+
+    /**
+     * Loads star data from systems.txt. Returns a catalog of every star,
+     * indexed from zero in file order and colored by Settings.colorStars().
+     * 
+     * Lines that can't be parsed are reported with their line number and
+     * skipped.
+     * 
+     * @return the catalog of stars
+     */
+    public StarCatalog loadStarData() {
+        StarCatalog stars = new StarCatalog(8192);
+        
+        float positionFactor = FastMath.pow(2, 60);
+        float sizeFactor = .02f;
+        
+        DumpReader in = null;
+        try {
+            in = new DumpReader(Files.newInputStream(Paths.get("assets/systems.txt")));
+            
+            while (in.nextLine()) {
+                if (in.atEndOfLine()) continue;
+                if (in.getLine() == 1 && !in.startsWithNumber()) continue; // header
+                
+                try {
+                    // SOLARSYSTEMID SOLARSYSTEMNAME X Y Z LUMINOSITY SECURITY RADIUS
+                    int id = in.nextInt();
+                    in.skipText();
+                    float x = (float)(in.nextDouble()/positionFactor) + 0.075f;
+                    float y = (float)(in.nextDouble()/positionFactor);
+                    float z = (float)(in.nextDouble()/positionFactor);
+                    float luminosity = in.nextFloat();
+                    float security = in.nextFloat();
+                    float radius = in.nextFloat();
+                    
+                    float size = FastMath.pow(luminosity*radius, 0.125f)*sizeFactor;
+                    
+                    // exclude w-space (offset from the origin in a group by itself)
+                    if (x-z < 5) {
+                        stars.add(id, x, y, z, size, security);
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("systems.txt:" + in.getLine() + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println("IOException when reading systems.txt");
+        } finally {
+            close(in);
+        }
+        
+        settings.colorStars(stars);
+        
+        return stars;
+    }
+    
+    /**
+     * Given the catalog from loadStarData() and the assets/gates.txt file,
+     * builds the graph of jumpgates between stars. Lines that can't be parsed
+     * are reported with their line number and skipped.
+     * 
+     * @param stars the catalog of stars returned by loadStarData()
+     * @return the jumpgate graph
+     */
+    public GateGraph loadGateData(StarCatalog stars) {
+        int[] from = new int[16384];
+        int[] to = new int[16384];
+        int count = 0;
+        
+        DumpReader in = null;
+        try {
+            in = new DumpReader(Files.newInputStream(Paths.get("assets/gates.txt")));
+            
+            while (in.nextLine()) {
+                if (in.atEndOfLine()) continue;
+                if (in.getLine() == 1 && !in.startsWithNumber()) continue; // header
+                
+                int s1, s2;
+                try {
+                    s1 = stars.indexOf(in.nextInt());
+                    s2 = stars.indexOf(in.nextInt());
+                } catch (NumberFormatException e) {
+                    System.err.println("gates.txt:" + in.getLine() + ": " + e.getMessage());
+                    continue;
+                }
+                
+                if (s1 >= 0 && s2 >= 0) {
+                    if (count == from.length) {
+                        from = Arrays.copyOf(from, count*2);
+                        to = Arrays.copyOf(to, count*2);
+                    }
+                    from[count] = s1;
+                    to[count] = s2;
+                    ++count;
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println("IOException when reading gates.txt");
+        } finally {
+            close(in);
+        }
+        
+        return new GateGraph(stars.size(), from, to, count);
+    }
+    
+    private void close(Closeable c) {
+        try {
+            if (c != null) c.close();
+        } catch (IOException ex) { }
+    }
+}